@@ -0,0 +1,44 @@
+/**
+ * Every vertex reachable from a vertex set, with its bfs depth, sorted by vertex id.
+ * <p>
+ * The shortest ancestral path between two sets meets at a vertex reachable from both, so with both maps at hand
+ * their distance is a merge of two sorted arrays. One upward bfs per set then serves any number of pairs.
+ */
+class AncestorDepths {
+    private final int[] vertices; // ascending
+    private final int[] depths;
+
+    AncestorDepths(int[] vertices, int[] depths) {
+        this.vertices = vertices;
+        this.depths = depths;
+    }
+
+    int size() {
+        return vertices.length;
+    }
+
+    int vertex(int i) {
+        return vertices[i];
+    }
+
+    int depth(int i) {
+        return depths[i];
+    }
+
+    // length of shortest ancestral path between the two sets; -1 if no such path
+    static int distance(AncestorDepths a, AncestorDepths b) {
+        int i = 0, j = 0;
+        int best = Integer.MAX_VALUE;
+        while (i < a.vertices.length && j < b.vertices.length) {
+            int x = a.vertices[i], y = b.vertices[j];
+            if (x < y) {
+                i++;
+            } else if (x > y) {
+                j++;
+            } else {
+                best = Math.min(best, a.depths[i++] + b.depths[j++]);
+            }
+        }
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+}
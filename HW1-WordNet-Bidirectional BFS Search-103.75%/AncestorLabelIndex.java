@@ -0,0 +1,163 @@
+import java.util.Arrays;
+
+/**
+ * Ancestor-distance labeling: for every vertex v, all vertices reachable from v with their bfs distances,
+ * sorted by vertex id.
+ * <p>
+ * The shortest ancestral path between v and w goes through a vertex in both labels, so a query becomes a merge of
+ * two sorted lists with no graph traversal. In a rooted DAG such as the WordNet hypernym graph ancestor sets are
+ * small; in a general digraph a label is the whole reachable set, so the build gives up past a size budget.
+ */
+public class AncestorLabelIndex {
+    private final int[] offsets;   // labels of v are at offsets[v] .. offsets[v + 1] - 1
+    private final int[] ancestors; // sorted ascending within a label
+    private final int[] dists;
+    private final boolean[] stale; // labels outdated by later edges; null if none are
+    private final long buildNanos;
+
+    private AncestorLabelIndex(int[] offsets, int[] ancestors, int[] dists, boolean[] stale, long buildNanos) {
+        this.offsets = offsets;
+        this.ancestors = ancestors;
+        this.dists = dists;
+        this.stale = stale;
+        this.buildNanos = buildNanos;
+    }
+
+    // copy of this index in which the labels of vertices are no longer used
+    AncestorLabelIndex withStale(int[] vertices) {
+        int V = offsets.length - 1;
+        boolean[] newStale = stale == null ? new boolean[V] : stale.clone();
+        for (int v : vertices) {
+            if (v < V) {
+                newStale[v] = true;
+            }
+        }
+        return new AncestorLabelIndex(offsets, ancestors, dists, newStale, buildNanos);
+    }
+
+    // whether the index holds the current label of v; vertices added after the build have none.
+    boolean covers(int v) {
+        return v < offsets.length - 1 && (stale == null || !stale[v]);
+    }
+
+    /**
+     * One bfs per vertex.
+     *
+     * @return the index, or null if it would hold more than maxLabels entries.
+     */
+    static AncestorLabelIndex build(CSRDigraph graph, long maxLabels) {
+        long start = System.nanoTime();
+        int V = graph.V();
+        int[] adjOffsets = graph.offsets();
+        int[] targets = graph.targets();
+
+        int[] stamp = new int[V];
+        int[] dist = new int[V];
+        int[] queue = new int[V];
+
+        int[] offsets = new int[V + 1];
+        int[] ancestors = new int[Math.max(16, 4 * V)];
+        int[] dists = new int[ancestors.length];
+        int size = 0;
+        for (int v = 0; v < V; v++) {
+            // bfs from v; stamp v + 1 marks this round, so stamp needs no clearing.
+            int head = 0, tail = 0;
+            stamp[v] = v + 1;
+            dist[v] = 0;
+            queue[tail++] = v;
+            while (head < tail) {
+                int node = queue[head++];
+                for (int i = adjOffsets[node], end = adjOffsets[node + 1]; i < end; i++) {
+                    int vertex = targets[i];
+                    if (stamp[vertex] != v + 1) {
+                        stamp[vertex] = v + 1;
+                        dist[vertex] = dist[node] + 1;
+                        queue[tail++] = vertex;
+                    }
+                }
+            }
+
+            if (size + tail > maxLabels || size + tail < 0) {
+                return null;
+            }
+            if (size + tail > ancestors.length) {
+                int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(size + tail, 2L * ancestors.length));
+                ancestors = Arrays.copyOf(ancestors, capacity);
+                dists = Arrays.copyOf(dists, capacity);
+            }
+            Arrays.sort(queue, 0, tail);
+            for (int i = 0; i < tail; i++) {
+                ancestors[size] = queue[i];
+                dists[size] = dist[queue[i]];
+                size++;
+            }
+            offsets[v + 1] = size;
+        }
+        return new AncestorLabelIndex(offsets, Arrays.copyOf(ancestors, size), Arrays.copyOf(dists, size),
+                null, System.nanoTime() - start);
+    }
+
+    /**
+     * Merges the labels of v and w.
+     *
+     * @return length in the high 32 bits and ancestor in the low 32 bits, or -1 if v and w share no ancestor.
+     */
+    long query(int v, int w) {
+        int i = offsets[v], iEnd = offsets[v + 1];
+        int j = offsets[w], jEnd = offsets[w + 1];
+        int length = Integer.MAX_VALUE, ancestor = -1;
+        while (i < iEnd && j < jEnd) {
+            int a = ancestors[i], b = ancestors[j];
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                int newLength = dists[i] + dists[j];
+                if (newLength < length) {
+                    length = newLength;
+                    ancestor = a;
+                }
+                i++;
+                j++;
+            }
+        }
+        return ancestor == -1 ? -1 : ((long) length << 32) | ancestor;
+    }
+
+    int labelStart(int v) {
+        return offsets[v];
+    }
+
+    int labelEnd(int v) {
+        return offsets[v + 1];
+    }
+
+    int labelAncestor(int i) {
+        return ancestors[i];
+    }
+
+    int labelDist(int i) {
+        return dists[i];
+    }
+
+    // total number of (ancestor, distance) entries
+    public long size() {
+        return ancestors.length;
+    }
+
+    // bytes held by the index arrays
+    public long memoryBytes() {
+        return 4L * (offsets.length + ancestors.length + dists.length);
+    }
+
+    public double buildMillis() {
+        return buildNanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("labels=%d (%.1f per vertex) memory=%.1f MB build=%.1f ms",
+                size(), (double) size() / (offsets.length - 1), memoryBytes() / 1e6, buildMillis());
+    }
+}
@@ -0,0 +1,48 @@
+import java.util.Arrays;
+
+/**
+ * A shortest ancestral path, as its two halves: from a vertex of the first set up to the common ancestor, and
+ * from a vertex of the second set up to the same ancestor.
+ */
+public class AncestralPath {
+    private final int[] fromV; // v, ..., ancestor
+    private final int[] fromW; // w, ..., ancestor
+
+    AncestralPath(int[] fromV, int[] fromW) {
+        this.fromV = fromV;
+        this.fromW = fromW;
+    }
+
+    // number of edges on both halves
+    public int length() {
+        return fromV.length + fromW.length - 2;
+    }
+
+    public int ancestor() {
+        return fromV[fromV.length - 1];
+    }
+
+    // vertices from the first set's endpoint to the ancestor, both included
+    public Iterable<Integer> fromV() {
+        return () -> Arrays.stream(fromV).iterator();
+    }
+
+    // vertices from the second set's endpoint to the ancestor, both included
+    public Iterable<Integer> fromW() {
+        return () -> Arrays.stream(fromW).iterator();
+    }
+
+    // "v -> ... -> ancestor <- ... <- w"
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int x : fromV) {
+            sb.append(x).append(" -> ");
+        }
+        sb.setLength(sb.length() - 4);
+        for (int i = fromW.length - 2; i >= 0; i--) {
+            sb.append(" <- ").append(fromW[i]);
+        }
+        return sb.toString();
+    }
+}
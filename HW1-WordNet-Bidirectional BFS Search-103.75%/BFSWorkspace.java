@@ -0,0 +1,406 @@
+import java.util.Arrays;
+
+/**
+ * Reusable state for the bidirectional bfs in SAP.
+ * <p>
+ * Depths live in int[] arrays indexed by vertex. A vertex's depth is only valid when its stamp equals
+ * the current version, so nothing has to be cleared between queries.
+ */
+class BFSWorkspace {
+    private int[] stamp1, stamp2; // stamp[v] == version iff v was reached from that side.
+    private int[] dist1, dist2;   // smallest depth bfs from starting points.
+    private int[] parent1, parent2; // vertex a bfs reached v from; -1 for a starting point.
+
+    // frontier queues. Every vertex enters a side's queue at most once per query, so a V-sized array never wraps.
+    private int[] queue1, queue2;
+    private int head1, tail1, head2, tail2;
+
+    private int version;
+    private int length, ancestor;
+    private int levels, peakFrontier; // of the last search, for QueryMetrics
+
+    BFSWorkspace(int V) {
+        allocate(V);
+    }
+
+    private void allocate(int V) {
+        stamp1 = new int[V];
+        stamp2 = new int[V];
+        dist1 = new int[V];
+        dist2 = new int[V];
+        parent1 = new int[V];
+        parent2 = new int[V];
+        queue1 = new int[V];
+        queue2 = new int[V];
+    }
+
+    // start a new query on a graph with V vertices: invalidates everything the previous query reached.
+    void reset(int V) {
+        if (stamp1.length < V) {
+            // the graph grew; fresh arrays hold no valid stamps.
+            allocate(Math.max(V, 2 * stamp1.length));
+            version = 0;
+        }
+        if (version == Integer.MAX_VALUE) {
+            Arrays.fill(stamp1, 0);
+            Arrays.fill(stamp2, 0);
+            version = 0;
+        }
+        version++;
+        head1 = tail1 = head2 = tail2 = 0;
+        length = Integer.MAX_VALUE;
+        ancestor = -1;
+    }
+
+    void addSource1(int v) {
+        if (stamp1[v] != version) {
+            visit1(v, 0, -1);
+        }
+    }
+
+    void addSource2(int w) {
+        if (stamp2[w] != version) {
+            visit2(w, 0, -1);
+        }
+    }
+
+    // the starting points of side 1, each once, in the order added; a copy taken before search.
+    int[] sources1() {
+        return Arrays.copyOf(queue1, tail1);
+    }
+
+    int[] sources2() {
+        return Arrays.copyOf(queue2, tail2);
+    }
+
+    /**
+     * Using bidirectional bfs search.
+     * <p>
+     * Expanding a level at depth d only discovers vertices at depth d + 1, so a side stops once that can no
+     * longer beat the best length found so far. Unlike an s-t search, the sum of both depths is no bound here:
+     * the meeting vertex may already be settled at a small depth on one side.
+     *
+     * @param depths if not null, skip vertices from which no path can beat the best length, see DepthIndex.
+     * @param balanced expand the side with the smaller frontier instead of one level per side in turn.
+     */
+    void search(SAPGraph graph, DepthIndex depths, boolean balanced) {
+        int[] offsets = offsets(graph);
+        int[] targets = targets(graph);
+        int[] maxDepth = null;
+        int bound1 = 0, bound2 = 0; // smallest depth of the sources of each side
+        if (depths != null) {
+            maxDepth = depths.maxDepths();
+            bound1 = minDepth(depths, queue1, tail1);
+            bound2 = minDepth(depths, queue2, tail2);
+        }
+        int depth1 = 0, depth2 = 0;
+        int peak = 0;
+        while (true) {
+            boolean open1 = head1 < tail1 && depth1 + 1 < length;
+            boolean open2 = head2 < tail2 && depth2 + 1 < length;
+            if (!open1 && !open2) {
+                break;
+            }
+            peak = Math.max(peak, Math.max(tail1 - head1, tail2 - head2));
+
+            if (balanced) {
+                // the queue holds exactly the current level, so its size is the frontier size.
+                if (open1 && (!open2 || tail1 - head1 <= tail2 - head2)) {
+                    level1(graph, offsets, targets, depth1++, maxDepth, bound2);
+                } else {
+                    level2(graph, offsets, targets, depth2++, maxDepth, bound1);
+                }
+            } else {
+                if (open1) {
+                    level1(graph, offsets, targets, depth1++, maxDepth, bound2);
+                }
+                if (head2 < tail2 && depth2 + 1 < length) {
+                    level2(graph, offsets, targets, depth2++, maxDepth, bound1);
+                }
+            }
+        }
+        levels = depth1 + depth2;
+        peakFrontier = Math.max(peak, Math.max(tail1 - head1, tail2 - head2));
+    }
+
+    // vertices side 1 expanded in the last search
+    int expanded1() {
+        return head1;
+    }
+
+    int expanded2() {
+        return head2;
+    }
+
+    // levels both sides expanded in the last search
+    int levels() {
+        return levels;
+    }
+
+    // the most vertices either side held in one level in the last search
+    int peakFrontier() {
+        return peakFrontier;
+    }
+
+    // whether the last search ended with a frontier left, because no further level could beat the best length
+    boolean stoppedEarly() {
+        return head1 < tail1 || head2 < tail2;
+    }
+
+    private static int minDepth(DepthIndex depths, int[] sources, int count) {
+        int min = Integer.MAX_VALUE;
+        for (int s = 0; s < count; s++) {
+            min = Math.min(min, depths.minDepth(sources[s]));
+        }
+        return min;
+    }
+
+    // backing arrays of an in-heap graph; null for other graphs, which are read through SAPGraph.
+    private static int[] offsets(SAPGraph graph) {
+        return graph instanceof CSRDigraph ? ((CSRDigraph) graph).offsets() : null;
+    }
+
+    private static int[] targets(SAPGraph graph) {
+        return graph instanceof CSRDigraph ? ((CSRDigraph) graph).targets() : null;
+    }
+
+    // expands side 1 through the arrays if there are any, else through the graph, which has no depth index.
+    private void level1(SAPGraph graph, int[] offsets, int[] targets, int depth, int[] maxDepth, int bound) {
+        if (offsets != null) {
+            expand1(offsets, targets, depth, maxDepth, bound);
+        } else {
+            expand1(graph, depth);
+        }
+    }
+
+    private void level2(SAPGraph graph, int[] offsets, int[] targets, int depth, int[] maxDepth, int bound) {
+        if (offsets != null) {
+            expand2(offsets, targets, depth, maxDepth, bound);
+        } else {
+            expand2(graph, depth);
+        }
+    }
+
+    // visits the next level of side 1 from the level at depth; with maxDepth, skips vertices pruned by bound.
+    private void expand1(int[] offsets, int[] targets, int depth, int[] maxDepth, int bound) {
+        int levelEnd = tail1;
+        while (head1 < levelEnd) {
+            int node = queue1[head1++];
+            for (int i = offsets[node], end = offsets[node + 1]; i < end; i++) {
+                int vertex = targets[i];
+                if (stamp1[vertex] != version) {
+                    if (maxDepth != null && depth + 1 + Math.max(0, bound - maxDepth[vertex]) >= length) {
+                        continue;
+                    }
+                    visit1(vertex, depth + 1, node);
+                }
+            }
+        }
+    }
+
+    private void expand2(int[] offsets, int[] targets, int depth, int[] maxDepth, int bound) {
+        int levelEnd = tail2;
+        while (head2 < levelEnd) {
+            int node = queue2[head2++];
+            for (int i = offsets[node], end = offsets[node + 1]; i < end; i++) {
+                int vertex = targets[i];
+                if (stamp2[vertex] != version) {
+                    if (maxDepth != null && depth + 1 + Math.max(0, bound - maxDepth[vertex]) >= length) {
+                        continue;
+                    }
+                    visit2(vertex, depth + 1, node);
+                }
+            }
+        }
+    }
+
+    // as above, reading adjacency through the graph
+    private void expand1(SAPGraph graph, int depth) {
+        int levelEnd = tail1;
+        while (head1 < levelEnd) {
+            int node = queue1[head1++];
+            for (long i = graph.start(node), end = graph.start(node + 1); i < end; i++) {
+                int vertex = graph.target(i);
+                if (stamp1[vertex] != version) {
+                    visit1(vertex, depth + 1, node);
+                }
+            }
+        }
+    }
+
+    private void expand2(SAPGraph graph, int depth) {
+        int levelEnd = tail2;
+        while (head2 < levelEnd) {
+            int node = queue2[head2++];
+            for (long i = graph.start(node), end = graph.start(node + 1); i < end; i++) {
+                int vertex = graph.target(i);
+                if (stamp2[vertex] != version) {
+                    visit2(vertex, depth + 1, node);
+                }
+            }
+        }
+    }
+
+    // every vertex reachable from the side 1 sources, with its depth.
+    AncestorDepths ancestorDepths(SAPGraph graph) {
+        int[] offsets = offsets(graph);
+        int[] targets = targets(graph);
+        for (int depth = 0; head1 < tail1; depth++) {
+            level1(graph, offsets, targets, depth, null, 0);
+        }
+        int[] vertices = Arrays.copyOf(queue1, tail1);
+        Arrays.sort(vertices);
+        int[] depths = new int[tail1];
+        for (int i = 0; i < tail1; i++) {
+            depths[i] = dist1[vertices[i]];
+        }
+        return new AncestorDepths(vertices, depths);
+    }
+
+    /**
+     * Visits every vertex in nondecreasing order of ancestral distance from the side 1 sources: up to an ancestor
+     * through graph, then down to the vertex through reverse. Stops when the visitor returns false.
+     */
+    void descend(CSRDigraph graph, CSRDigraph reverse, SAP.DistanceVisitor visitor) {
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        for (int depth = 0; head1 < tail1; depth++) {
+            expand1(offsets, targets, depth, null, 0);
+        }
+
+        // queue1 holds the ancestors in bfs order, so by nondecreasing depth. An ancestor at depth d joins the
+        // downward frontier at level d unless a shorter way down reached it first.
+        offsets = reverse.offsets();
+        targets = reverse.targets();
+        int next = 0;
+        for (int d = 0; next < tail1 || head2 < tail2; d++) {
+            while (next < tail1 && dist1[queue1[next]] == d) {
+                int a = queue1[next++];
+                if (stamp2[a] != version) {
+                    stamp2[a] = version;
+                    dist2[a] = d;
+                    queue2[tail2++] = a;
+                }
+            }
+            int levelEnd = tail2;
+            while (head2 < levelEnd) {
+                int node = queue2[head2++];
+                if (!visitor.visit(node, d)) {
+                    return;
+                }
+                for (int i = offsets[node], end = offsets[node + 1]; i < end; i++) {
+                    int vertex = targets[i];
+                    if (stamp2[vertex] != version) {
+                        stamp2[vertex] = version;
+                        dist2[vertex] = d + 1;
+                        queue2[tail2++] = vertex;
+                    }
+                }
+            }
+        }
+    }
+
+    // whether the label index holds current labels for every source of both sides
+    boolean labelsCover(AncestorLabelIndex index) {
+        for (int s = 0; s < tail1; s++) {
+            if (!index.covers(queue1[s])) {
+                return false;
+            }
+        }
+        for (int s = 0; s < tail2; s++) {
+            if (!index.covers(queue2[s])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Answers the query from the label index instead of the graph. A single pair merges the two sorted labels;
+     * larger sets scatter the labels of side 1 into dist1, keeping the smallest distance per ancestor, and then
+     * probe them with the labels of side 2.
+     */
+    void searchLabels(AncestorLabelIndex index) {
+        if (tail1 == 1 && tail2 == 1) {
+            long res = index.query(queue1[0], queue2[0]);
+            if (res != -1) {
+                offer((int) res, (int) (res >>> 32));
+            }
+            return;
+        }
+
+        for (int s = 0; s < tail1; s++) {
+            for (int i = index.labelStart(queue1[s]), end = index.labelEnd(queue1[s]); i < end; i++) {
+                int a = index.labelAncestor(i);
+                int d = index.labelDist(i);
+                if (stamp1[a] != version || d < dist1[a]) {
+                    stamp1[a] = version;
+                    dist1[a] = d;
+                }
+            }
+        }
+        for (int s = 0; s < tail2; s++) {
+            for (int i = index.labelStart(queue2[s]), end = index.labelEnd(queue2[s]); i < end; i++) {
+                int a = index.labelAncestor(i);
+                if (stamp1[a] == version) {
+                    offer(a, dist1[a] + index.labelDist(i));
+                }
+            }
+        }
+    }
+
+    private void visit1(int v, int depth, int parent) {
+        stamp1[v] = version;
+        dist1[v] = depth;
+        parent1[v] = parent;
+        queue1[tail1++] = v;
+        // co-visited a node
+        if (stamp2[v] == version) {
+            offer(v, depth + dist2[v]);
+        }
+    }
+
+    private void visit2(int w, int depth, int parent) {
+        stamp2[w] = version;
+        dist2[w] = depth;
+        parent2[w] = parent;
+        queue2[tail2++] = w;
+        if (stamp1[w] == version) {
+            offer(w, dist1[w] + depth);
+        }
+    }
+
+    private void offer(int node, int newLength) {
+        if (newLength < length) {
+            length = newLength;
+            ancestor = node;
+        }
+    }
+
+    // length of the last search; -1 if no such path
+    int length() {
+        return ancestor == -1 ? -1 : length;
+    }
+
+    // ancestor of the last search; -1 if no such path
+    int ancestor() {
+        return ancestor;
+    }
+
+    // side 1 half of the path found by the last graph search: a starting point, ..., the ancestor
+    int[] path1() {
+        return path(parent1, dist1);
+    }
+
+    int[] path2() {
+        return path(parent2, dist2);
+    }
+
+    private int[] path(int[] parent, int[] dist) {
+        int[] path = new int[dist[ancestor] + 1];
+        for (int i = path.length - 1, x = ancestor; i >= 0; i--, x = parent[x]) {
+            path[i] = x;
+        }
+        return path;
+    }
+}
@@ -0,0 +1,231 @@
+import java.util.Arrays;
+
+/**
+ * Answers up to 64 shortest ancestral path queries in one bidirectional sweep of the graph.
+ * <p>
+ * Bit i of seen1[x] means x has been reached from the first vertex set of query i, so one long per vertex and
+ * side carries all 64 searches and every adjacency scan is shared between them. A side expands level by level;
+ * the bits newly reached at a level are recorded per vertex, and a meeting of both sides at x gives query i the
+ * candidate length level1 + level2. Bits of a query stop spreading once their next level cannot beat its best
+ * length, just as a side stops in the single-query bfs.
+ * <p>
+ * Arrays are reused across sweeps; only touched vertices are cleared.
+ */
+class BitParallelSAP {
+    static final int WIDTH = Long.SIZE; // queries per sweep
+
+    private Side side1, side2;
+    private final int[] best = new int[WIDTH];
+    private final int[] ancestor = new int[WIDTH];
+    private long queries; // bit i set iff query i is in this sweep
+
+    BitParallelSAP(int V) {
+        this.side1 = new Side(V);
+        this.side2 = new Side(V);
+    }
+
+    // start a new sweep over a graph with V vertices
+    void reset(int V) {
+        if (side1.seen.length < V) {
+            side1 = new Side(Math.max(V, 2 * side1.seen.length));
+            side2 = new Side(side1.seen.length);
+        }
+        side1.clear();
+        side2.clear();
+        Arrays.fill(best, Integer.MAX_VALUE);
+        Arrays.fill(ancestor, -1);
+        queries = 0;
+    }
+
+    void addSource1(int query, int v) {
+        queries |= 1L << query;
+        side1.seed(v, 1L << query);
+    }
+
+    void addSource2(int query, int w) {
+        queries |= 1L << query;
+        side2.seed(w, 1L << query);
+    }
+
+    // runs the sweep; query i's result goes to lengths[offset + i] and ancestors[offset + i].
+    void run(SAPGraph graph, int[] lengths, int[] ancestors, int offset) {
+        side1.record(0, side2);
+        side2.record(0, side1);
+        int level1 = 0, level2 = 0;
+        while (!side1.frontierEmpty() || !side2.frontierEmpty()) {
+            if (!side1.frontierEmpty()) {
+                side1.expand(graph, activeBits(level1));
+                side1.record(++level1, side2);
+            }
+            if (!side2.frontierEmpty()) {
+                side2.expand(graph, activeBits(level2));
+                side2.record(++level2, side1);
+            }
+        }
+
+        for (long m = queries; m != 0; m &= m - 1) {
+            int i = Long.numberOfTrailingZeros(m);
+            lengths[offset + i] = ancestor[i] == -1 ? -1 : best[i];
+            ancestors[offset + i] = ancestor[i];
+        }
+    }
+
+    // queries whose frontier at level may still improve their best length
+    private long activeBits(int level) {
+        long active = 0;
+        for (long m = queries; m != 0; m &= m - 1) {
+            int i = Long.numberOfTrailingZeros(m);
+            if (level + 1 < best[i]) {
+                active |= 1L << i;
+            }
+        }
+        return active;
+    }
+
+    private void offer(long bits, int length, int x) {
+        for (long m = bits; m != 0; m &= m - 1) {
+            int i = Long.numberOfTrailingZeros(m);
+            if (length < best[i]) {
+                best[i] = length;
+                ancestor[i] = x;
+            }
+        }
+    }
+
+    // one direction of the sweep
+    private final class Side {
+        private final long[] seen;     // bits of the queries that reached a vertex
+        private long[] frontier, next; // bits reached at the current and the next level
+        private int[] frontierList, nextList;
+        private int frontierSize, nextSize;
+        private final int[] touched;   // vertices with seen != 0
+        private int touchedSize;
+
+        // per-vertex chains of (level, bits) entries: the bits first reached at that level.
+        private final int[] head;
+        private int[] entryNext, entryLevel;
+        private long[] entryBits;
+        private int entries;
+
+        Side(int V) {
+            seen = new long[V];
+            frontier = new long[V];
+            next = new long[V];
+            frontierList = new int[V];
+            nextList = new int[V];
+            touched = new int[V];
+            head = new int[V];
+            Arrays.fill(head, -1);
+            entryNext = new int[Math.max(16, V / 4)];
+            entryLevel = new int[entryNext.length];
+            entryBits = new long[entryNext.length];
+        }
+
+        void clear() {
+            for (int i = 0; i < touchedSize; i++) {
+                int x = touched[i];
+                seen[x] = 0;
+                head[x] = -1;
+            }
+            for (int i = 0; i < frontierSize; i++) {
+                frontier[frontierList[i]] = 0;
+            }
+            for (int i = 0; i < nextSize; i++) {
+                next[nextList[i]] = 0;
+            }
+            touchedSize = frontierSize = nextSize = entries = 0;
+        }
+
+        boolean frontierEmpty() {
+            return frontierSize == 0;
+        }
+
+        // level 0 of the sweep; goes to next until the first record().
+        void seed(int v, long bit) {
+            reach(v, bit & ~seen[v]);
+        }
+
+        // spreads the active frontier bits one level up into next.
+        void expand(SAPGraph graph, long active) {
+            // an in-heap graph is read through its arrays, any other through SAPGraph.
+            int[] offsets = graph instanceof CSRDigraph ? ((CSRDigraph) graph).offsets() : null;
+            int[] targets = graph instanceof CSRDigraph ? ((CSRDigraph) graph).targets() : null;
+            for (int k = 0; k < frontierSize; k++) {
+                int u = frontierList[k];
+                long bits = frontier[u] & active;
+                frontier[u] = 0;
+                if (bits == 0) {
+                    continue;
+                }
+                if (offsets == null) {
+                    for (long i = graph.start(u), end = graph.start(u + 1); i < end; i++) {
+                        int t = graph.target(i);
+                        reach(t, bits & ~seen[t]);
+                    }
+                    continue;
+                }
+                for (int i = offsets[u], end = offsets[u + 1]; i < end; i++) {
+                    int t = targets[i];
+                    long newBits = bits & ~seen[t];
+                    if (newBits != 0) {
+                        reach(t, newBits);
+                    }
+                }
+            }
+            frontierSize = 0;
+        }
+
+        private void reach(int x, long newBits) {
+            if (newBits == 0) {
+                return;
+            }
+            if (seen[x] == 0) {
+                touched[touchedSize++] = x;
+            }
+            seen[x] |= newBits;
+            if (next[x] == 0) {
+                nextList[nextSize++] = x;
+            }
+            next[x] |= newBits;
+        }
+
+        // records next as the given level, checks it against the other side, and makes it the frontier.
+        void record(int level, Side other) {
+            for (int k = 0; k < nextSize; k++) {
+                int x = nextList[k];
+                long bits = next[x];
+                if ((bits & other.seen[x]) != 0) {
+                    for (int e = other.head[x]; e != -1; e = other.entryNext[e]) {
+                        long met = bits & other.entryBits[e];
+                        if (met != 0) {
+                            offer(met, level + other.entryLevel[e], x);
+                        }
+                    }
+                }
+                addEntry(x, level, bits);
+            }
+
+            long[] tmp = frontier;
+            frontier = next;
+            next = tmp;
+            int[] tmpList = frontierList;
+            frontierList = nextList;
+            nextList = tmpList;
+            frontierSize = nextSize;
+            nextSize = 0;
+        }
+
+        private void addEntry(int x, int level, long bits) {
+            if (entries == entryNext.length) {
+                int capacity = 2 * entries;
+                entryNext = Arrays.copyOf(entryNext, capacity);
+                entryLevel = Arrays.copyOf(entryLevel, capacity);
+                entryBits = Arrays.copyOf(entryBits, capacity);
+            }
+            entryNext[entries] = head[x];
+            entryLevel[entries] = level;
+            entryBits[entries] = bits;
+            head[x] = entries++;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+import edu.princeton.cs.algs4.Digraph;
+
+import java.util.Arrays;
+
+/**
+ * Immutable digraph in compressed sparse row form. Mutations return a modified copy.
+ * <p>
+ * The vertices adjacent from v are targets[offsets[v]] .. targets[offsets[v + 1] - 1], in the same order as
+ * Digraph.adj(v). Two flat int[] arrays replace a Bag of boxed Integers per vertex, so adjacency scans are
+ * sequential reads.
+ */
+class CSRDigraph implements SAPGraph {
+    private final int V;
+    private final int[] offsets; // length V + 1
+    private final int[] targets; // length E
+
+    // snapshot of G; later changes to G are not reflected.
+    CSRDigraph(Digraph G) {
+        if (G == null) {
+            throw new IllegalArgumentException();
+        }
+        V = G.V();
+        offsets = new int[V + 1];
+        for (int v = 0; v < V; v++) {
+            offsets[v + 1] = offsets[v] + G.outdegree(v);
+        }
+        targets = new int[offsets[V]];
+        for (int v = 0; v < V; v++) {
+            int i = offsets[v];
+            for (int w : G.adj(v)) {
+                targets[i++] = w;
+            }
+        }
+    }
+
+    // wraps existing arrays without copying or checking them.
+    CSRDigraph(int[] offsets, int[] targets) {
+        this.V = offsets.length - 1;
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    /**
+     * Digraph with edges from[i] -> to[i]. Like Digraph.adj, which lists the most recently added edge first,
+     * each adjacency list is in reverse edge order.
+     */
+    static CSRDigraph fromEdges(int V, int[] from, int[] to) {
+        int[] offsets = new int[V + 1];
+        for (int v : from) {
+            if (v < 0 || v >= V) {
+                throw new IllegalArgumentException("vertex " + v + " is not between 0 and " + (V - 1));
+            }
+            offsets[v + 1]++;
+        }
+        for (int v = 0; v < V; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] next = Arrays.copyOf(offsets, V);
+        int[] targets = new int[from.length];
+        for (int e = from.length - 1; e >= 0; e--) {
+            if (to[e] < 0 || to[e] >= V) {
+                throw new IllegalArgumentException("vertex " + to[e] + " is not between 0 and " + (V - 1));
+            }
+            targets[next[from[e]]++] = to[e];
+        }
+        return new CSRDigraph(offsets, targets);
+    }
+
+    @Override
+    public int V() {
+        return V;
+    }
+
+    int E() {
+        return targets.length;
+    }
+
+    @Override
+    public int outdegree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    @Override
+    public long start(int v) {
+        return offsets[v];
+    }
+
+    @Override
+    public int target(long e) {
+        return targets[(int) e];
+    }
+
+    // backing arrays, shared rather than copied: callers must not modify them.
+    int[] offsets() {
+        return offsets;
+    }
+
+    int[] targets() {
+        return targets;
+    }
+
+    // copy with one more vertex, V, which has no edges
+    CSRDigraph withVertex() {
+        int[] newOffsets = Arrays.copyOf(offsets, V + 2);
+        newOffsets[V + 1] = newOffsets[V];
+        return new CSRDigraph(newOffsets, targets);
+    }
+
+    // copy with edge v->w, which like Digraph.addEdge comes first in adj(v)
+    CSRDigraph withEdge(int v, int w) {
+        int[] newOffsets = new int[V + 1];
+        for (int u = 0; u <= V; u++) {
+            newOffsets[u] = u <= v ? offsets[u] : offsets[u] + 1;
+        }
+        int[] newTargets = new int[targets.length + 1];
+        System.arraycopy(targets, 0, newTargets, 0, offsets[v]);
+        newTargets[offsets[v]] = w;
+        System.arraycopy(targets, offsets[v], newTargets, offsets[v] + 1, targets.length - offsets[v]);
+        return new CSRDigraph(newOffsets, newTargets);
+    }
+
+    // the digraph with every edge reversed
+    CSRDigraph reverse() {
+        int[] reverseOffsets = new int[V + 1];
+        for (int w : targets) {
+            reverseOffsets[w + 1]++;
+        }
+        for (int v = 0; v < V; v++) {
+            reverseOffsets[v + 1] += reverseOffsets[v];
+        }
+        int[] next = Arrays.copyOf(reverseOffsets, V);
+        int[] reverseTargets = new int[targets.length];
+        for (int v = 0; v < V; v++) {
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                reverseTargets[next[targets[i]]++] = v;
+            }
+        }
+        return new CSRDigraph(reverseOffsets, reverseTargets);
+    }
+
+    /**
+     * A renumbering in bfs order from the sinks along reversed edges, so the top of a hierarchy comes first and
+     * every level is stored contiguously. Vertices that reach no sink follow, in bfs order from the lowest id left.
+     *
+     * @return old vertex id of each new id.
+     */
+    int[] bfsOrder() {
+        CSRDigraph reverse = reverse();
+        int[] reverseOffsets = reverse.offsets;
+        int[] reverseTargets = reverse.targets;
+        boolean[] marked = new boolean[V];
+        int[] order = new int[V];
+        int tail = 0;
+        for (int v = 0; v < V; v++) {
+            if (offsets[v] == offsets[v + 1]) {
+                marked[v] = true;
+                order[tail++] = v;
+            }
+        }
+        int head = 0, start = 0;
+        while (true) {
+            while (head < tail) {
+                int v = order[head++];
+                for (int i = reverseOffsets[v]; i < reverseOffsets[v + 1]; i++) {
+                    int w = reverseTargets[i];
+                    if (!marked[w]) {
+                        marked[w] = true;
+                        order[tail++] = w;
+                    }
+                }
+            }
+            if (tail == V) {
+                break;
+            }
+            while (marked[start]) {
+                start++;
+            }
+            marked[start] = true;
+            order[tail++] = start;
+        }
+        return order;
+    }
+
+    /**
+     * Copy with vertex toExternal[i] renumbered to i; toInternal is the inverse permutation. Each adjacency list
+     * keeps its order.
+     */
+    CSRDigraph permute(int[] toExternal, int[] toInternal) {
+        int[] newOffsets = new int[V + 1];
+        int[] newTargets = new int[targets.length];
+        for (int i = 0; i < V; i++) {
+            int v = toExternal[i];
+            int degree = offsets[v + 1] - offsets[v];
+            for (int k = 0; k < degree; k++) {
+                newTargets[newOffsets[i] + k] = toInternal[targets[offsets[v] + k]];
+            }
+            newOffsets[i + 1] = newOffsets[i] + degree;
+        }
+        return new CSRDigraph(newOffsets, newTargets);
+    }
+
+    // whether the digraph has a directed cycle: a topological sort peels off every vertex only if there is none.
+    boolean hasCycle() {
+        int[] indegree = new int[V];
+        for (int w : targets) {
+            indegree[w]++;
+        }
+        int[] queue = new int[V];
+        int head = 0, tail = 0;
+        for (int v = 0; v < V; v++) {
+            if (indegree[v] == 0) {
+                queue[tail++] = v;
+            }
+        }
+        while (head < tail) {
+            int v = queue[head++];
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                if (--indegree[targets[i]] == 0) {
+                    queue[tail++] = targets[i];
+                }
+            }
+        }
+        return tail < V;
+    }
+
+    // number of vertices with outdegree 0
+    int sinks() {
+        int sinks = 0;
+        for (int v = 0; v < V; v++) {
+            if (offsets[v] == offsets[v + 1]) {
+                sinks++;
+            }
+        }
+        return sinks;
+    }
+
+    // bytes held by the two arrays
+    long memoryBytes() {
+        return 4L * (offsets.length + targets.length);
+    }
+}
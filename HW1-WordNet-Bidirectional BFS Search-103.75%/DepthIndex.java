@@ -0,0 +1,156 @@
+import java.util.Arrays;
+
+/**
+ * Shortest and longest path length from every vertex of a DAG down to a sink, for pruning the bfs in SAP.
+ * <p>
+ * If a is reachable from p and from w, then minDepth(w) <= dist(w, a) + minDepth(a) and
+ * maxDepth(p) >= dist(p, a) + maxDepth(a), so any ancestral path that continues from p to meet w needs at least
+ * max(0, minDepth(w) - maxDepth(p)) more steps. A frontier vertex whose depth plus that bound cannot beat the best
+ * length found so far is never enqueued. The bound is widest for far-apart queries, where one side would otherwise
+ * climb into the upper taxonomy that the other side's sources sit far below.
+ */
+public class DepthIndex {
+    private final CSRDigraph graph; // the digraph the depths are for
+    private final int[] minDepth;
+    private final int[] maxDepth;
+
+    private DepthIndex(CSRDigraph graph, int[] minDepth, int[] maxDepth) {
+        this.graph = graph;
+        this.minDepth = minDepth;
+        this.maxDepth = maxDepth;
+    }
+
+    // whether the depths are those of graph; a query racing a mutation may hold the other version.
+    boolean isFor(SAPGraph graph) {
+        return this.graph == graph;
+    }
+
+    /**
+     * Fills both depths in reverse topological order.
+     *
+     * @return the index, or null if the digraph has a cycle.
+     */
+    static DepthIndex build(CSRDigraph graph) {
+        int V = graph.V();
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+
+        // Kahn's algorithm on the reverse digraph: a vertex is ready once all of its targets are done.
+        int[] pending = new int[V];
+        int[] order = new int[V];
+        int tail = 0;
+        for (int v = 0; v < V; v++) {
+            pending[v] = offsets[v + 1] - offsets[v];
+            if (pending[v] == 0) {
+                order[tail++] = v;
+            }
+        }
+        CSRDigraph reverse = graph.reverse();
+        int[] reverseOffsets = reverse.offsets();
+        int[] reverseTargets = reverse.targets();
+        int[] minDepth = new int[V];
+        int[] maxDepth = new int[V];
+        for (int head = 0; head < tail; head++) {
+            int v = order[head];
+            depths(v, offsets, targets, minDepth, maxDepth);
+            for (int i = reverseOffsets[v]; i < reverseOffsets[v + 1]; i++) {
+                if (--pending[reverseTargets[i]] == 0) {
+                    order[tail++] = reverseTargets[i];
+                }
+            }
+        }
+        return tail < V ? null : new DepthIndex(graph, minDepth, maxDepth);
+    }
+
+    // depths of v from the depths of its targets
+    private static void depths(int v, int[] offsets, int[] targets, int[] minDepth, int[] maxDepth) {
+        if (offsets[v] == offsets[v + 1]) {
+            minDepth[v] = 0;
+            maxDepth[v] = 0;
+            return;
+        }
+        int min = Integer.MAX_VALUE, max = 0;
+        for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+            min = Math.min(min, minDepth[targets[i]]);
+            max = Math.max(max, maxDepth[targets[i]]);
+        }
+        minDepth[v] = min + 1;
+        maxDepth[v] = max + 1;
+    }
+
+    // copy for graph, this digraph with one more vertex, a sink
+    DepthIndex withVertex(CSRDigraph graph) {
+        return new DepthIndex(graph, Arrays.copyOf(minDepth, minDepth.length + 1),
+                Arrays.copyOf(maxDepth, maxDepth.length + 1));
+    }
+
+    /**
+     * Copy for graph after an edge out of a vertex was added, where affected holds, in ascending order, that vertex
+     * and every vertex that reaches it: the only depths that can change.
+     *
+     * @return the updated index, or null if the edge closed a cycle.
+     */
+    DepthIndex withEdge(CSRDigraph graph, CSRDigraph reverse, int[] affected) {
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] newMin = Arrays.copyOf(minDepth, graph.V());
+        int[] newMax = Arrays.copyOf(maxDepth, graph.V());
+
+        // Kahn's algorithm restricted to the affected vertices; the depths of all other targets stay valid.
+        int[] pending = new int[affected.length];
+        int[] order = new int[affected.length];
+        int tail = 0;
+        for (int k = 0; k < affected.length; k++) {
+            int v = affected[k];
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                if (Arrays.binarySearch(affected, targets[i]) >= 0) {
+                    pending[k]++;
+                }
+            }
+            if (pending[k] == 0) {
+                order[tail++] = v;
+            }
+        }
+        int[] reverseOffsets = reverse.offsets();
+        int[] reverseTargets = reverse.targets();
+        for (int head = 0; head < tail; head++) {
+            int v = order[head];
+            depths(v, offsets, targets, newMin, newMax);
+            for (int i = reverseOffsets[v]; i < reverseOffsets[v + 1]; i++) {
+                int k = Arrays.binarySearch(affected, reverseTargets[i]);
+                if (k >= 0 && --pending[k] == 0) {
+                    order[tail++] = reverseTargets[i];
+                }
+            }
+        }
+        return tail < affected.length ? null : new DepthIndex(graph, newMin, newMax);
+    }
+
+    // length of a shortest path from v to a sink
+    int minDepth(int v) {
+        return minDepth[v];
+    }
+
+    // length of a longest path from v to a sink
+    int maxDepth(int v) {
+        return maxDepth[v];
+    }
+
+    int[] maxDepths() {
+        return maxDepth;
+    }
+
+    // bytes held by the index arrays
+    public long memoryBytes() {
+        return 4L * (minDepth.length + maxDepth.length);
+    }
+
+    @Override
+    public String toString() {
+        int deepest = 0;
+        for (int d : maxDepth) {
+            deepest = Math.max(deepest, d);
+        }
+        return String.format("vertices=%d maxDepth=%d memory=%.1f MB", maxDepth.length, deepest, memoryBytes() / 1e6);
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * An ancestral distance from the landmark bounds, or from an exact search when the bounds were too far apart.
+ */
+public class DistanceEstimate {
+    private final int distance;
+    private final int lowerBound;
+    private final boolean exact;
+
+    DistanceEstimate(int distance, int lowerBound, boolean exact) {
+        this.distance = distance;
+        this.lowerBound = lowerBound;
+        this.exact = exact;
+    }
+
+    // the estimate: the landmark upper bound, or the exact length if exact(); -1 if there is no ancestral path
+    public int distance() {
+        return distance;
+    }
+
+    // the true distance is at least this; equal to distance() if exact()
+    public int lowerBound() {
+        return lowerBound;
+    }
+
+    // whether distance() is the true distance: the bounds met, or an exact search ran
+    public boolean exact() {
+        return exact;
+    }
+
+    @Override
+    public String toString() {
+        return exact ? Integer.toString(distance) : lowerBound + ".." + distance;
+    }
+}
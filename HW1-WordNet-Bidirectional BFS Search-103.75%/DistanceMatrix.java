@@ -0,0 +1,123 @@
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Writes the WordNet distances between all pairs of a noun list to a file.
+ * <p>
+ * The matrix is computed one band of rows at a time. A band is memory-mapped on its own and cut into square tiles,
+ * which are filled in parallel: each tile finds the ancestor maps of its column nouns with one upward bfs per noun
+ * and merges them with the band's row maps. Only one band's maps are held at a time, and the mapped pages are
+ * written back as the band completes, so resident memory depends on the tile size, not on the number of nouns.
+ * <p>
+ * Layout, little-endian: MAGIC, VERSION, n, bytes per distance (2 or 4), then the n x n distances in row-major
+ * order, row i and column j being nouns i and j of the list; -1 marks pairs with no ancestral path.
+ */
+public class DistanceMatrix {
+    private static final int MAGIC = 0x57444D58; // "WDMX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int TILE = 512;         // nouns per tile side
+
+    private final WordNet wordnet;
+    private final int tile;
+
+    public DistanceMatrix(WordNet wordnet) {
+        this(wordnet, TILE);
+    }
+
+    public DistanceMatrix(WordNet wordnet, int tile) {
+        if (wordnet == null || tile <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.wordnet = wordnet;
+        this.tile = tile;
+    }
+
+    /**
+     * Writes the distances between all pairs of nouns to path, as shorts, or as ints if wide.
+     *
+     * @throws IllegalArgumentException if a noun is not a WordNet noun, or a distance does not fit in a short.
+     */
+    public void export(List<String> nouns, Path path, boolean wide) throws IOException {
+        if (nouns == null || path == null) {
+            throw new IllegalArgumentException();
+        }
+        for (String noun : nouns) {
+            if (noun == null || !wordnet.isNoun(noun)) {
+                throw new IllegalArgumentException("not a WordNet noun: " + noun);
+            }
+        }
+        int n = nouns.size();
+        int width = wide ? 4 : 2;
+        // a band is one mapping, which is limited to 2 GB.
+        int rows = (int) Math.max(1, Math.min(tile, Integer.MAX_VALUE / Math.max(1L, (long) n * width)));
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(width);
+            header.force();
+
+            for (int rowStart = 0; rowStart < n; rowStart += rows) {
+                int rowEnd = Math.min(n, rowStart + rows);
+                MappedByteBuffer band = channel.map(FileChannel.MapMode.READ_WRITE,
+                        HEADER_BYTES + (long) rowStart * n * width, (long) (rowEnd - rowStart) * n * width);
+                band.order(ByteOrder.LITTLE_ENDIAN);
+
+                AncestorDepths[] rowMaps = new AncestorDepths[rowEnd - rowStart];
+                int from = rowStart;
+                IntStream.range(0, rowMaps.length).parallel()
+                        .forEach(i -> rowMaps[i] = wordnet.ancestorDepths(nouns.get(from + i)));
+                // tiles write disjoint cells with absolute puts, so they can share the band.
+                IntStream.range(0, (n + tile - 1) / tile).parallel()
+                        .forEach(t -> fill(band, rowMaps, nouns, t * tile, Math.min(n, (t + 1) * tile), n, wide));
+                band.force();
+            }
+        }
+    }
+
+    // distances between the band's rows and the nouns colStart .. colEnd - 1
+    private void fill(MappedByteBuffer band, AncestorDepths[] rowMaps, List<String> nouns, int colStart, int colEnd,
+                      int n, boolean wide) {
+        AncestorDepths[] colMaps = new AncestorDepths[colEnd - colStart];
+        for (int j = 0; j < colMaps.length; j++) {
+            colMaps[j] = wordnet.ancestorDepths(nouns.get(colStart + j));
+        }
+        for (int i = 0; i < rowMaps.length; i++) {
+            for (int j = 0; j < colMaps.length; j++) {
+                int distance = AncestorDepths.distance(rowMaps[i], colMaps[j]);
+                long cell = (long) i * n + colStart + j;
+                if (wide) {
+                    band.putInt((int) (4 * cell), distance);
+                } else if (distance <= Short.MAX_VALUE) {
+                    band.putShort((int) (2 * cell), (short) distance);
+                } else {
+                    throw new IllegalArgumentException("distance " + distance + " does not fit in a short");
+                }
+            }
+        }
+    }
+
+    // usage: java DistanceMatrix synsets.txt hypernyms.txt nouns.txt matrix.bin
+    public static void main(String[] args) throws IOException {
+        WordNet wordnet = WordNet.load(Paths.get(args[0]), Paths.get(args[1]));
+        List<String> nouns = Arrays.asList(new In(args[2]).readAllStrings());
+        long start = System.nanoTime();
+        new DistanceMatrix(wordnet).export(nouns, Paths.get(args[3]), false);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        StdOut.printf("%d x %d distances in %.3f s: %.1f M pairs/s\n", nouns.size(), nouns.size(), seconds,
+                (double) nouns.size() * nouns.size() / seconds / 1e6);
+    }
+}
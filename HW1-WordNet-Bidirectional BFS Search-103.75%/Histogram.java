@@ -0,0 +1,126 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values, such as latencies in nanoseconds, in log-linear buckets as in
+ * HdrHistogram: values below 64 get a bucket each, and every power of two above is split into 32 buckets, so a
+ * bucket is within about 3% of any value in it. Recording is an atomic add per bucket and a LongAdder for the sum,
+ * plus a compare-and-set when the maximum grows; the whole range of a long fits in 1888 buckets.
+ */
+public class Histogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;  // buckets per power of two
+    private static final int LINEAR = 2 * SUB_BUCKETS;     // values with a bucket each
+    private static final int BUCKETS = LINEAR + (63 - SUB_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException();
+        }
+        counts.incrementAndGet(bucket(value));
+        sum.add(value);
+        long m;
+        while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+            // another thread raised the maximum; compare again.
+        }
+    }
+
+    private static int bucket(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // at least SUB_BITS + 1
+        int shift = exponent - SUB_BITS;
+        return LINEAR + (exponent - SUB_BITS - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // smallest value that falls in bucket b
+    private static long lowest(int b) {
+        if (b < LINEAR) {
+            return b;
+        }
+        int shift = (b - LINEAR) / SUB_BUCKETS + 1;
+        return (long) (SUB_BUCKETS + (b - LINEAR) % SUB_BUCKETS) << shift;
+    }
+
+    // a copy of the counts; recordings that race it land in this snapshot or the next.
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            copy[b] = counts.get(b);
+            count += copy[b];
+        }
+        return new Snapshot(copy, count, sum.sum(), max.get());
+    }
+
+    public void reset() {
+        for (int b = 0; b < BUCKETS; b++) {
+            counts.set(b, 0);
+        }
+        sum.reset();
+        max.set(0);
+    }
+
+    // the recorded values at one point in time
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        // the value below which a fraction q of the values fall, to bucket precision; 0 if there are none
+        public long percentile(double q) {
+            if (q < 0 || q > 1) {
+                throw new IllegalArgumentException();
+            }
+            long rank = (long) Math.ceil(q * count);
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= rank && seen > 0) {
+                    // the middle of the bucket, but never past the largest value recorded
+                    long high = b + 1 < counts.length ? lowest(b + 1) - 1 : Long.MAX_VALUE;
+                    return Math.min(max, lowest(b) + (high - lowest(b)) / 2);
+                }
+            }
+            return 0;
+        }
+
+        // "count=... mean=... p50=... p99=... max=..." with values divided by scale
+        public String toString(double scale) {
+            return String.format("count=%d mean=%.3f p50=%.3f p90=%.3f p99=%.3f p999=%.3f max=%.3f", count,
+                    mean() / scale, percentile(0.5) / scale, percentile(0.9) / scale, percentile(0.99) / scale,
+                    percentile(0.999) / scale, max / scale);
+        }
+
+        @Override
+        public String toString() {
+            return toString(1);
+        }
+    }
+}
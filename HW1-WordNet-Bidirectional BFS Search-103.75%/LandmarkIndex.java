@@ -0,0 +1,171 @@
+import java.util.Arrays;
+
+/**
+ * Exact bfs distances between every vertex and a few landmark vertices, for bounding ancestral distances without a
+ * search.
+ * <p>
+ * up(v, l) is the length of a shortest directed path from v to landmark l, so up(v, l) + up(w, l) is the length of
+ * some ancestral path and bounds the shortest one from above. An ancestral path is also an undirected path, so the
+ * triangle inequality on undirected distances gives |und(v, l) - und(w, l)| as a bound from below. Distances are
+ * shorts laid out [v * L + i], so the L landmarks of a vertex share a cache line.
+ */
+public class LandmarkIndex {
+    private static final short UNREACHABLE = Short.MAX_VALUE;
+
+    private final int[] landmarks;
+    private final short[] up;         // up[v * L + i]: directed distance from v to landmarks[i]
+    private final short[] undirected; // undirected[v * L + i]: distance between v and landmarks[i] ignoring direction
+    private final long buildNanos;
+
+    private LandmarkIndex(int[] landmarks, short[] up, short[] undirected, long buildNanos) {
+        this.landmarks = landmarks;
+        this.up = up;
+        this.undirected = undirected;
+        this.buildNanos = buildNanos;
+    }
+
+    /**
+     * Takes the count vertices with the most incoming edges as landmarks, the hubs most shortest ancestral paths
+     * pass near, and the sinks first, since every path in a rooted DAG can end there.
+     */
+    static LandmarkIndex build(CSRDigraph graph, int count) {
+        long start = System.nanoTime();
+        int V = graph.V();
+        CSRDigraph reverse = graph.reverse();
+        Integer[] byDegree = new Integer[V];
+        for (int v = 0; v < V; v++) {
+            byDegree[v] = v;
+        }
+        Arrays.sort(byDegree, (a, b) -> {
+            boolean sinkA = graph.outdegree(a) == 0, sinkB = graph.outdegree(b) == 0;
+            if (sinkA != sinkB) {
+                return sinkA ? -1 : 1;
+            }
+            return Integer.compare(reverse.outdegree(b), reverse.outdegree(a));
+        });
+        int L = Math.min(count, V);
+        if ((long) V * L > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many landmarks for " + V + " vertices");
+        }
+        int[] landmarks = new int[L];
+        for (int i = 0; i < L; i++) {
+            landmarks[i] = byDegree[i];
+        }
+
+        short[] up = new short[V * L];
+        short[] undirected = new short[V * L];
+        Arrays.fill(up, UNREACHABLE);
+        Arrays.fill(undirected, UNREACHABLE);
+        int[] dist = new int[V];
+        int[] queue = new int[V];
+        for (int i = 0; i < L; i++) {
+            // vertices that reach the landmark are those it reaches along reversed edges.
+            bfs(landmarks[i], dist, queue, reverse, null);
+            for (int v = 0; v < V; v++) {
+                up[v * L + i] = clamp(dist[v]);
+            }
+            bfs(landmarks[i], dist, queue, graph, reverse);
+            for (int v = 0; v < V; v++) {
+                undirected[v * L + i] = clamp(dist[v]);
+            }
+        }
+        return new LandmarkIndex(landmarks, up, undirected, System.nanoTime() - start);
+    }
+
+    // bfs from s along the edges of a and, if not null, of b; dist[v] is -1 for unreached vertices
+    private static void bfs(int s, int[] dist, int[] queue, CSRDigraph a, CSRDigraph b) {
+        Arrays.fill(dist, -1);
+        int head = 0, tail = 0;
+        dist[s] = 0;
+        queue[tail++] = s;
+        while (head < tail) {
+            int v = queue[head++];
+            tail = expand(v, a, dist, queue, tail);
+            if (b != null) {
+                tail = expand(v, b, dist, queue, tail);
+            }
+        }
+    }
+
+    // enqueues the unreached targets of v in g; returns the new queue tail
+    private static int expand(int v, CSRDigraph g, int[] dist, int[] queue, int tail) {
+        int[] offsets = g.offsets();
+        int[] targets = g.targets();
+        for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+            if (dist[targets[k]] == -1) {
+                dist[targets[k]] = dist[v] + 1;
+                queue[tail++] = targets[k];
+            }
+        }
+        return tail;
+    }
+
+    // distances too large for a short are treated as unknown
+    private static short clamp(int d) {
+        return d < 0 || d >= UNREACHABLE ? UNREACHABLE : (short) d;
+    }
+
+    // whether the index has distances for v; vertices added after the build have none.
+    boolean covers(int v) {
+        return (long) v * landmarks.length < up.length;
+    }
+
+    /**
+     * Bounds on the length of a shortest ancestral path between any vertex in v and any vertex in w.
+     *
+     * @return {lower, upper}; upper is Integer.MAX_VALUE if no landmark is a common ancestor.
+     */
+    int[] bounds(int[] v, int[] w) {
+        int L = landmarks.length;
+        int upper = Integer.MAX_VALUE;
+        for (int i = 0; i < L; i++) {
+            int toV = minUp(v, i), toW = minUp(w, i);
+            if (toV != UNREACHABLE && toW != UNREACHABLE) {
+                upper = Math.min(upper, toV + toW);
+            }
+        }
+        // the shortest path is between some pair, so the bound is the smallest over pairs.
+        int lower = Integer.MAX_VALUE;
+        for (int a : v) {
+            for (int b : w) {
+                int pair = 0;
+                for (int i = 0; i < L; i++) {
+                    int da = undirected[a * L + i], db = undirected[b * L + i];
+                    if (da != UNREACHABLE && db != UNREACHABLE) {
+                        pair = Math.max(pair, Math.abs(da - db));
+                    }
+                }
+                lower = Math.min(lower, pair);
+            }
+        }
+        return new int[]{lower, upper};
+    }
+
+    private int minUp(int[] v, int i) {
+        int L = landmarks.length;
+        int min = UNREACHABLE;
+        for (int a : v) {
+            min = Math.min(min, up[a * L + i]);
+        }
+        return min;
+    }
+
+    // number of landmarks
+    public int size() {
+        return landmarks.length;
+    }
+
+    // bytes held by the index arrays
+    public long memoryBytes() {
+        return 4L * landmarks.length + 2L * (up.length + undirected.length);
+    }
+
+    public double buildMillis() {
+        return buildNanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("landmarks=%d memory=%.1f MB build=%.1f ms", size(), memoryBytes() / 1e6, buildMillis());
+    }
+}
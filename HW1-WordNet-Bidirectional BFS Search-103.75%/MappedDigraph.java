@@ -0,0 +1,253 @@
+import edu.princeton.cs.algs4.Digraph;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Immutable digraph in compressed sparse row form, stored in a file and read through memory mappings, for graphs
+ * whose edges do not fit on the heap. SAP searches it through SAPGraph: only the pages a search touches are read,
+ * and the operating system keeps the hot ones cached.
+ * <p>
+ * Layout, little-endian: MAGIC, VERSION, V, 0, E as a long, then V + 1 long offsets and E int targets; the
+ * vertices adjacent from v are targets[offsets[v]] .. targets[offsets[v + 1] - 1]. The file is mapped in 1 GB
+ * chunks, since one MappedByteBuffer is limited to 2 GB. Every value is aligned to its size and the chunk size is
+ * a multiple of 8, so no value straddles two chunks.
+ */
+public class MappedDigraph implements SAPGraph {
+    private static final int MAGIC = 0x57444D47; // "WDMG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    private final Path path;
+    private final int V;
+    private final long E;
+    private final long targetsAt; // byte position of targets[0]
+    private final MappedByteBuffer[] chunks;
+
+    private MappedDigraph(Path path, int V, long E, MappedByteBuffer[] chunks) {
+        this.path = path;
+        this.V = V;
+        this.E = E;
+        this.targetsAt = HEADER_BYTES + 8L * (V + 1);
+        this.chunks = chunks;
+    }
+
+    // the digraph stored at path by write or fromHypernyms
+    public static MappedDigraph open(Path path) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mappings stay valid after the channel is closed.
+            MappedByteBuffer[] chunks = map(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+            if (channel.size() < HEADER_BYTES || chunks[0].getInt(0) != MAGIC) {
+                throw new IOException("not a mapped digraph: " + path);
+            }
+            int version = chunks[0].getInt(4);
+            if (version != VERSION) {
+                throw new IOException("unsupported mapped digraph version " + version + ": " + path);
+            }
+            int V = chunks[0].getInt(8);
+            long E = chunks[0].getLong(16);
+            if (V < 0 || E < 0 || channel.size() != size(V, E)) {
+                throw new IOException("truncated mapped digraph: " + path);
+            }
+            return new MappedDigraph(path, V, E, chunks);
+        }
+    }
+
+    // writes G to path, with each adjacency list in Digraph.adj order
+    public static MappedDigraph write(Digraph G, Path path) throws IOException {
+        if (G == null || path == null) {
+            throw new IllegalArgumentException();
+        }
+        int V = G.V();
+        long[] offsets = new long[V + 1];
+        for (int v = 0; v < V; v++) {
+            offsets[v + 1] = offsets[v] + G.outdegree(v);
+        }
+        try (FileChannel channel = create(path)) {
+            MappedByteBuffer[] chunks = map(channel, FileChannel.MapMode.READ_WRITE, size(V, offsets[V]));
+            writeHeader(chunks, V, offsets);
+            long at = HEADER_BYTES + 8L * (V + 1);
+            for (int v = 0; v < V; v++) {
+                for (int w : G.adj(v)) {
+                    putInt(chunks, at, w);
+                    at += 4;
+                }
+            }
+            force(chunks);
+        }
+        return open(path);
+    }
+
+    /**
+     * Converts a hypernyms.txt file, "v,w,w,..." lines, into a mapped digraph at path in two streaming passes: one
+     * counts the edges out of each vertex, the other writes every edge into its slot. The heap holds a count and an
+     * offset per vertex, never the edges. Like WordNet's parser, each adjacency list is in reverse file order.
+     *
+     * @param V the number of synsets; every id must be between 0 and V - 1.
+     */
+    public static MappedDigraph fromHypernyms(Path hypernyms, int V, Path path) throws IOException {
+        if (hypernyms == null || path == null || V < 0) {
+            throw new IllegalArgumentException();
+        }
+        int[] count = new int[V];
+        try (BufferedReader in = Files.newBufferedReader(hypernyms)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int[] ids = parse(line, V);
+                if (ids.length > 0) {
+                    count[ids[0]] += ids.length - 1;
+                }
+            }
+        }
+        long[] offsets = new long[V + 1];
+        for (int v = 0; v < V; v++) {
+            offsets[v + 1] = offsets[v] + count[v];
+        }
+
+        try (FileChannel channel = create(path);
+             BufferedReader in = Files.newBufferedReader(hypernyms)) {
+            MappedByteBuffer[] chunks = map(channel, FileChannel.MapMode.READ_WRITE, size(V, offsets[V]));
+            writeHeader(chunks, V, offsets);
+            long targetsAt = HEADER_BYTES + 8L * (V + 1);
+            // count[v] edges of v are still to be written, each into the last free slot of v's list.
+            String line;
+            while ((line = in.readLine()) != null) {
+                int[] ids = parse(line, V);
+                for (int i = 1; i < ids.length; i++) {
+                    int v = ids[0];
+                    putInt(chunks, targetsAt + 4 * (offsets[v] + --count[v]), ids[i]);
+                }
+            }
+            force(chunks);
+        }
+        return open(path);
+    }
+
+    // the ids of a "v,w,w,..." line; empty for a blank line
+    private static int[] parse(String line, int V) {
+        if (line.isEmpty()) {
+            return new int[0];
+        }
+        String[] fields = line.split(",");
+        int[] ids = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            ids[i] = Integer.parseInt(fields[i]);
+            if (ids[i] < 0 || ids[i] >= V) {
+                throw new IllegalArgumentException("vertex " + ids[i] + " is not between 0 and " + (V - 1));
+            }
+        }
+        return ids;
+    }
+
+    private static FileChannel create(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static long size(int V, long E) {
+        return HEADER_BYTES + 8L * (V + 1) + 4L * E;
+    }
+
+    // mappings of bytes 0 .. size - 1 of channel, one per chunk; mapping READ_WRITE past the end grows the file.
+    private static MappedByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, long size)
+            throws IOException {
+        MappedByteBuffer[] chunks = new MappedByteBuffer[(int) Math.max(1, (size + CHUNK_MASK) >>> CHUNK_SHIFT)];
+        for (int c = 0; c < chunks.length; c++) {
+            long from = (long) c << CHUNK_SHIFT;
+            chunks[c] = channel.map(mode, from, Math.min(CHUNK_MASK + 1, size - from));
+            chunks[c].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return chunks;
+    }
+
+    private static void writeHeader(MappedByteBuffer[] chunks, int V, long[] offsets) {
+        chunks[0].putInt(0, MAGIC).putInt(4, VERSION).putInt(8, V).putInt(12, 0).putLong(16, offsets[V]);
+        for (int v = 0; v <= V; v++) {
+            long at = HEADER_BYTES + 8L * v;
+            chunks[(int) (at >>> CHUNK_SHIFT)].putLong((int) (at & CHUNK_MASK), offsets[v]);
+        }
+    }
+
+    private static void putInt(MappedByteBuffer[] chunks, long at, int value) {
+        chunks[(int) (at >>> CHUNK_SHIFT)].putInt((int) (at & CHUNK_MASK), value);
+    }
+
+    private static void force(MappedByteBuffer[] chunks) {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    @Override
+    public int V() {
+        return V;
+    }
+
+    // number of edges
+    public long E() {
+        return E;
+    }
+
+    @Override
+    public long start(int v) {
+        long at = HEADER_BYTES + 8L * v;
+        return chunks[(int) (at >>> CHUNK_SHIFT)].getLong((int) (at & CHUNK_MASK));
+    }
+
+    @Override
+    public int target(long e) {
+        long at = targetsAt + 4 * e;
+        return chunks[(int) (at >>> CHUNK_SHIFT)].getInt((int) (at & CHUNK_MASK));
+    }
+
+    // the vertices adjacent from v, copied out of the mapping
+    public int[] adj(int v) {
+        if (v < 0 || v >= V) {
+            throw new IllegalArgumentException();
+        }
+        int[] adj = new int[outdegree(v)];
+        long first = start(v);
+        for (int i = 0; i < adj.length; i++) {
+            adj[i] = target(first + i);
+        }
+        return adj;
+    }
+
+    // bytes of the file, none of which are on the heap
+    public long fileBytes() {
+        return size(V, E);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: V=%d E=%d file=%.1f MB", path, V, E, fileBytes() / 1e6);
+    }
+
+    // usage: java MappedDigraph hypernyms.txt V graph.bin [v w]
+    // converts hypernyms.txt, then answers one query on the mapped graph if v and w are given.
+    public static void main(String[] args) throws IOException {
+        long start = System.nanoTime();
+        MappedDigraph graph = fromHypernyms(Paths.get(args[0]), Integer.parseInt(args[1]), Paths.get(args[2]));
+        StdOut.printf("%s, written in %.1f ms\n", graph, (System.nanoTime() - start) / 1e6);
+        if (args.length > 4) {
+            SAP sap = new SAP(graph);
+            int v = Integer.parseInt(args[3]);
+            int w = Integer.parseInt(args[4]);
+            StdOut.printf("adj(%d) = %s, path: %s\n", v, Arrays.toString(graph.adj(v)), sap.path(v, w));
+        }
+    }
+}
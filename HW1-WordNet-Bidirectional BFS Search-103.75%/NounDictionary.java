@@ -0,0 +1,242 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact noun table of a WordNet.
+ * <p>
+ * The distinct nouns are sorted and stored back to back in one char[] arena; noun i is
+ * chars[nounOffsets[i] .. nounOffsets[i + 1]). Lookups go through an open-addressing table of noun indices keyed
+ * by String.hashCode, which a String caches, so isNoun costs one probe and one char comparison in the common case.
+ * Synset ids are dense, so noun to synsets and synset to nouns are CSR-style int[] pairs instead of maps of lists.
+ */
+class NounDictionary {
+    private final char[] chars;
+    private final int[] nounOffsets;
+    private final int[] nounSynsetOffsets, nounSynsets; // synsets of noun i, in synsets.txt order
+    private final int[] synsetNounOffsets, synsetNouns; // nouns of synset id, in synsets.txt order
+
+    private final int[] hashes; // String.hashCode of each noun
+    private final int[] table;  // noun index + 1 by hash slot; 0 is empty
+
+    NounDictionary(char[] chars, int[] nounOffsets, int[] nounSynsetOffsets, int[] nounSynsets,
+                   int[] synsetNounOffsets, int[] synsetNouns) {
+        this.chars = chars;
+        this.nounOffsets = nounOffsets;
+        this.nounSynsetOffsets = nounSynsetOffsets;
+        this.nounSynsets = nounSynsets;
+        this.synsetNounOffsets = synsetNounOffsets;
+        this.synsetNouns = synsetNouns;
+
+        int n = size();
+        hashes = new int[n];
+        table = new int[Integer.highestOneBit(Math.max(1, 2 * n - 1)) << 1];
+        int mask = table.length - 1;
+        for (int i = 0; i < n; i++) {
+            int h = 0;
+            for (int c = nounOffsets[i]; c < nounOffsets[i + 1]; c++) {
+                h = 31 * h + chars[c];
+            }
+            hashes[i] = h;
+            int slot = spread(h) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Builds the dictionary of parsed synsets, whose ids must be between 0 and the number of lines - 1.
+     */
+    static NounDictionary build(WordNetParser.Synsets parsed) {
+        int V = parsed.lines();
+        String[] sorted = Arrays.stream(parsed.nouns).distinct().sorted().toArray(String[]::new);
+        HashMap<String, Integer> index = new HashMap<>(2 * sorted.length);
+        int length = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            index.put(sorted[i], i);
+            length += sorted[i].length();
+        }
+        char[] chars = new char[length];
+        int[] nounOffsets = new int[sorted.length + 1];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i].getChars(0, sorted[i].length(), chars, nounOffsets[i]);
+            nounOffsets[i + 1] = nounOffsets[i] + sorted[i].length();
+        }
+
+        // noun index of every (line, noun) entry, then both CSR directions by counting sort in line order.
+        int[] entries = new int[parsed.nouns.length];
+        int[] nounSynsetOffsets = new int[sorted.length + 1];
+        int[] synsetNounOffsets = new int[V + 1];
+        for (int line = 0; line < V; line++) {
+            int id = parsed.ids[line];
+            if (id < 0 || id >= V) {
+                throw new IllegalArgumentException("synset id " + id + " is not between 0 and " + (V - 1));
+            }
+            for (int e = parsed.nounStarts[line]; e < parsed.nounStarts[line + 1]; e++) {
+                entries[e] = index.get(parsed.nouns[e]);
+                nounSynsetOffsets[entries[e] + 1]++;
+                synsetNounOffsets[id + 1]++;
+            }
+        }
+        for (int i = 0; i < sorted.length; i++) {
+            nounSynsetOffsets[i + 1] += nounSynsetOffsets[i];
+        }
+        for (int id = 0; id < V; id++) {
+            synsetNounOffsets[id + 1] += synsetNounOffsets[id];
+        }
+        int[] nounSynsets = new int[entries.length];
+        int[] synsetNouns = new int[entries.length];
+        int[] nextSynset = Arrays.copyOf(nounSynsetOffsets, sorted.length);
+        int[] nextNoun = Arrays.copyOf(synsetNounOffsets, V);
+        for (int line = 0; line < V; line++) {
+            int id = parsed.ids[line];
+            for (int e = parsed.nounStarts[line]; e < parsed.nounStarts[line + 1]; e++) {
+                nounSynsets[nextSynset[entries[e]]++] = id;
+                synsetNouns[nextNoun[id]++] = entries[e];
+            }
+        }
+        return new NounDictionary(chars, nounOffsets, nounSynsetOffsets, nounSynsets, synsetNounOffsets, synsetNouns);
+    }
+
+    // number of distinct nouns
+    int size() {
+        return nounOffsets.length - 1;
+    }
+
+    // number of synsets
+    int synsetCount() {
+        return synsetNounOffsets.length - 1;
+    }
+
+    // index of noun in sorted order; -1 if it is not in the dictionary
+    int indexOf(String noun) {
+        int h = noun.hashCode();
+        int mask = table.length - 1;
+        for (int slot = spread(h) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int i = table[slot] - 1;
+            if (hashes[i] == h && matches(i, noun)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    String noun(int i) {
+        return new String(chars, nounOffsets[i], nounOffsets[i + 1] - nounOffsets[i]);
+    }
+
+    // synset ids of noun i, as a read-only view of the backing array
+    List<Integer> synsets(int i) {
+        int from = nounSynsetOffsets[i];
+        int size = nounSynsetOffsets[i + 1] - from;
+        return new AbstractList<Integer>() {
+            @Override
+            public Integer get(int k) {
+                if (k < 0 || k >= size) {
+                    throw new IndexOutOfBoundsException();
+                }
+                return nounSynsets[from + k];
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    // synset ids of noun i, copied out of the backing array
+    int[] synsetIds(int i) {
+        return Arrays.copyOfRange(nounSynsets, nounSynsetOffsets[i], nounSynsetOffsets[i + 1]);
+    }
+
+    // nouns of synset id joined by spaces, the second field of synsets.txt
+    String synset(int id) {
+        StringBuilder sb = new StringBuilder();
+        for (int j = synsetNounOffsets[id]; j < synsetNounOffsets[id + 1]; j++) {
+            if (j > synsetNounOffsets[id]) {
+                sb.append(' ');
+            }
+            int i = synsetNouns[j];
+            sb.append(chars, nounOffsets[i], nounOffsets[i + 1] - nounOffsets[i]);
+        }
+        return sb.toString();
+    }
+
+    // all nouns in sorted order; Strings are created as the iteration reaches them.
+    Iterable<String> nouns() {
+        return () -> new Iterator<String>() {
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                return i < size();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return noun(i++);
+            }
+        };
+    }
+
+    // bytes held by the dictionary arrays
+    long memoryBytes() {
+        return 2L * chars.length + 4L * (nounOffsets.length + nounSynsetOffsets.length + nounSynsets.length
+                + synsetNounOffsets.length + synsetNouns.length + hashes.length + table.length);
+    }
+
+    char[] chars() {
+        return chars;
+    }
+
+    int[] nounOffsets() {
+        return nounOffsets;
+    }
+
+    int[] nounSynsetOffsets() {
+        return nounSynsetOffsets;
+    }
+
+    int[] nounSynsets() {
+        return nounSynsets;
+    }
+
+    int[] synsetNounOffsets() {
+        return synsetNounOffsets;
+    }
+
+    int[] synsetNouns() {
+        return synsetNouns;
+    }
+
+    private boolean matches(int i, String noun) {
+        int from = nounOffsets[i];
+        int length = nounOffsets[i + 1] - from;
+        if (length != noun.length()) {
+            return false;
+        }
+        for (int k = 0; k < length; k++) {
+            if (chars[from + k] != noun.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // String.hashCode of similar short strings, such as generated ids, is nearly consecutive, which would form long
+    // runs in the linear probing table; multiplying by the golden ratio scatters them, and the shift mixes the high
+    // bits it produces back into the low bits the mask keeps.
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,16 +1,22 @@
 import edu.princeton.cs.algs4.In;
-import edu.princeton.cs.algs4.Digraph;
-import edu.princeton.cs.algs4.StdIn;
+import edu.princeton.cs.algs4.StdOut;
 
-import java.util.HashMap;
+import java.util.stream.IntStream;
 
 public class Outcast {
 
     private final WordNet wordnet;
+    private final boolean parallel;
 
     // constructor takes a WordNet object
     public Outcast(WordNet wordnet) {
+        this(wordnet, false);
+    }
+
+    // as above; with parallel, the nouns of a list are processed on the common fork/join pool.
+    public Outcast(WordNet wordnet, boolean parallel) {
         this.wordnet = wordnet;
+        this.parallel = parallel;
     }
 
     // given an array of WordNet nouns, return an outcast
@@ -18,36 +24,48 @@ public class Outcast {
         if (nouns == null) {
             throw new IllegalArgumentException();
         }
+        QueryMetrics metrics = wordnet.metrics();
+        long start = metrics == null ? 0 : System.nanoTime();
 
+        // one upward bfs per noun; every pairwise distance is then a merge of two ancestor maps.
         int length = nouns.length;
-        int[][] dist = new int[length][length];
+        AncestorDepths[] ancestors = new AncestorDepths[length];
+        IntStream indices = IntStream.range(0, length);
+        (parallel ? indices.parallel() : indices).forEach(i -> ancestors[i] = wordnet.ancestorDepths(nouns[i]));
 
-        for (int i = 0; i < length; i++) {
-            for (int j = i; j < length; j++) {
-                if (i == j) {
-                    dist[i][j] = 0;
-                } else {
-                    int tmp = wordnet.distance(nouns[i], nouns[j]);
-                    dist[i][j] = dist[j][i] = tmp;
+        long[] dist = new long[length]; // sum of distances to all other nouns
+        if (parallel) {
+            IntStream.range(0, length).parallel().forEach(i -> {
+                long sum = 0;
+                for (int j = 0; j < length; j++) {
+                    if (i != j) {
+                        sum += AncestorDepths.distance(ancestors[i], ancestors[j]);
+                    }
+                }
+                dist[i] = sum;
+            });
+        } else {
+            for (int i = 0; i < length; i++) {
+                for (int j = i + 1; j < length; j++) {
+                    int tmp = AncestorDepths.distance(ancestors[i], ancestors[j]);
+                    dist[i] += tmp;
+                    dist[j] += tmp;
                 }
             }
         }
 
         int index = -1;
-        int maxDist = -1;
+        long maxDist = -1;
         for (int i = 0; i < length; i++) {
-            int curDist = 0;
-            for (int j = 0; j < length; j++) {
-                curDist += dist[i][j];
-            }
-
-            if (curDist > maxDist) {
-                maxDist = curDist;
+            if (dist[i] > maxDist) {
+                maxDist = dist[i];
                 index = i;
             }
-
         }
 
+        if (metrics != null) {
+            metrics.record(QueryMetrics.Operation.OUTCAST, System.nanoTime() - start);
+        }
         return nouns[index];
     }
 
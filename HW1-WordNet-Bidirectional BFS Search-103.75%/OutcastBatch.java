@@ -0,0 +1,128 @@
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdIn;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs Outcast over many noun files on a worker pool that shares one WordNet.
+ * <p>
+ * Files are submitted as they are read, with at most a few per worker in flight, and results are printed in input
+ * order as "file: outcast (latency)" lines, followed by a throughput summary. A file that cannot be read or holds
+ * an invalid noun list gets a "file: error: message" line instead, and the other files go on.
+ */
+public class OutcastBatch {
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    private final Outcast outcast;
+    private final int threads;
+
+    public OutcastBatch(WordNet wordnet, int threads) {
+        if (wordnet == null || threads <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.outcast = new Outcast(wordnet);
+        this.threads = threads;
+    }
+
+    private static final class Result {
+        final String file;
+        final String outcast;
+        final long nanos;
+
+        Result(String file, String outcast, long nanos) {
+            this.file = file;
+            this.outcast = outcast;
+            this.nanos = nanos;
+        }
+    }
+
+    // processes every file of files and prints results in that order; returns the number of files that failed.
+    public int run(Iterator<String> files) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<Result>> pending = new ArrayDeque<>();
+        ArrayDeque<String> names = new ArrayDeque<>(); // file of each pending result
+        long[] latencies = new long[1024];
+        int count = 0;
+        int failed = 0;
+        long start = System.nanoTime();
+        try {
+            while (files.hasNext() || !pending.isEmpty()) {
+                while (files.hasNext() && pending.size() < IN_FLIGHT_PER_THREAD * threads) {
+                    String file = files.next();
+                    names.add(file);
+                    pending.add(pool.submit(() -> {
+                        long t = System.nanoTime();
+                        String[] nouns = new In(file).readAllStrings();
+                        return new Result(file, outcast.outcast(nouns), System.nanoTime() - t);
+                    }));
+                }
+                String file = names.remove();
+                Result result;
+                try {
+                    result = pending.remove().get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    StdOut.printf("%s: error: %s\n", file, e.getCause());
+                    continue;
+                }
+                StdOut.printf("%s: %s (%.3f ms)\n", result.file, result.outcast, result.nanos / 1e6);
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, 2 * count);
+                }
+                latencies[count++] = result.nanos;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Arrays.sort(latencies, 0, count);
+        StdOut.printf("%d files in %.3f s on %d threads: %.1f files/s", count, seconds, threads, count / seconds);
+        if (failed > 0) {
+            StdOut.printf(", %d failed", failed);
+        }
+        if (count > 0) {
+            StdOut.printf(", latency p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                    latencies[(count - 1) / 2] / 1e6, latencies[(int) ((count - 1) * 0.99)] / 1e6,
+                    latencies[count - 1] / 1e6);
+        }
+        StdOut.println();
+        return failed;
+    }
+
+    // usage: java OutcastBatch synsets.txt hypernyms.txt threads [file ...]
+    // without files, file names are read from standard input, one per line. Exits with 1 if any file failed.
+    public static void main(String[] args) {
+        WordNet wordnet = new WordNet(args[0], args[1]);
+        OutcastBatch batch = new OutcastBatch(wordnet, Integer.parseInt(args[2]));
+        Iterator<String> files;
+        if (args.length > 3) {
+            files = Arrays.asList(args).subList(3, args.length).iterator();
+        } else {
+            files = new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return StdIn.hasNextLine();
+                }
+
+                @Override
+                public String next() {
+                    return StdIn.readLine().trim();
+                }
+            };
+        }
+        if (batch.run(files) > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Latency histograms for SAP and WordNet queries and counters for the bfs behind them, shared by a WordNet and its
+ * SAP. Instrumentation is off until a QueryMetrics is set on them; then each query costs two System.nanoTime
+ * calls and a lock-free recording, and each bfs a few LongAdder increments.
+ */
+public class QueryMetrics implements QueryMetricsMBean {
+    // the timed operations
+    public enum Operation {
+        LENGTH, ANCESTOR, DISTANCE, SAP, OUTCAST
+    }
+
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder expanded1 = new LongAdder();
+    private final LongAdder expanded2 = new LongAdder();
+    private final LongAdder levels = new LongAdder();
+    private final LongAdder early = new LongAdder();
+    private final AtomicLong peakFrontier = new AtomicLong();
+    private final Histogram expanded = new Histogram(); // vertices expanded by both sides, per search
+
+    public QueryMetrics() {
+        for (Operation op : Operation.values()) {
+            latencies.put(op, new Histogram());
+        }
+    }
+
+    void record(Operation op, long nanos) {
+        latencies.get(op).record(nanos);
+    }
+
+    /**
+     * Records one bidirectional bfs: the vertices each side expanded, the largest level either side expanded, the
+     * levels expanded in total, and whether it stopped early, that is, with vertices left in a frontier because no
+     * further level could beat the best length found.
+     */
+    void recordSearch(int expandedBy1, int expandedBy2, int peak, int levelCount, boolean stoppedEarly) {
+        searches.increment();
+        expanded1.add(expandedBy1);
+        expanded2.add(expandedBy2);
+        levels.add(levelCount);
+        if (stoppedEarly) {
+            early.increment();
+        }
+        long m;
+        while (peak > (m = peakFrontier.get()) && !peakFrontier.compareAndSet(m, peak)) {
+            // another search raised the peak; compare again.
+        }
+        expanded.record(expandedBy1 + expandedBy2);
+    }
+
+    // latencies of op in nanoseconds
+    public Histogram.Snapshot latency(Operation op) {
+        if (op == null) {
+            throw new IllegalArgumentException();
+        }
+        return latencies.get(op).snapshot();
+    }
+
+    // vertices expanded per search, both sides together
+    public Histogram.Snapshot expanded() {
+        return expanded.snapshot();
+    }
+
+    /**
+     * Registers this as an MBean named "WordNet:type=QueryMetrics,name=" + name on the platform MBean server.
+     *
+     * @throws IllegalStateException if the name is taken or invalid.
+     */
+    public void register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName(name));
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void unregister(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(name));
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ObjectName objectName(String name) throws JMException {
+        if (name == null) {
+            throw new IllegalArgumentException();
+        }
+        return new ObjectName("WordNet:type=QueryMetrics,name=" + ObjectName.quote(name));
+    }
+
+    @Override
+    public String[] getOperations() {
+        String[] names = new String[Operation.values().length];
+        for (Operation op : Operation.values()) {
+            names[op.ordinal()] = op.name();
+        }
+        return names;
+    }
+
+    private Histogram.Snapshot latency(String operation) {
+        try {
+            return latency(Operation.valueOf(operation));
+        } catch (NullPointerException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown operation: " + operation);
+        }
+    }
+
+    @Override
+    public long count(String operation) {
+        return latency(operation).count();
+    }
+
+    @Override
+    public double meanMicros(String operation) {
+        return latency(operation).mean() / 1e3;
+    }
+
+    @Override
+    public double percentileMicros(String operation, double q) {
+        return latency(operation).percentile(q) / 1e3;
+    }
+
+    @Override
+    public double maxMicros(String operation) {
+        return latency(operation).max() / 1e3;
+    }
+
+    @Override
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    @Override
+    public long getVerticesExpanded1() {
+        return expanded1.sum();
+    }
+
+    @Override
+    public long getVerticesExpanded2() {
+        return expanded2.sum();
+    }
+
+    @Override
+    public long getLevels() {
+        return levels.sum();
+    }
+
+    @Override
+    public long getPeakFrontier() {
+        return peakFrontier.get();
+    }
+
+    @Override
+    public long getEarlyTerminations() {
+        return early.sum();
+    }
+
+    @Override
+    public String getSummary() {
+        return toString();
+    }
+
+    @Override
+    public void reset() {
+        for (Histogram h : latencies.values()) {
+            h.reset();
+        }
+        expanded.reset();
+        searches.reset();
+        expanded1.reset();
+        expanded2.reset();
+        levels.reset();
+        early.reset();
+        peakFrontier.set(0);
+    }
+
+    // one line per operation that ran, latencies in microseconds, then the bfs counters
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Operation op : Operation.values()) {
+            Histogram.Snapshot s = latency(op);
+            if (s.count() > 0) {
+                sb.append(op.name().toLowerCase()).append(" us: ").append(s.toString(1e3)).append('\n');
+            }
+        }
+        long n = searches.sum();
+        sb.append(String.format("bfs: searches=%d expanded1=%.1f expanded2=%.1f levels=%.1f (means) peakFrontier=%d "
+                        + "early=%.1f%%", n, n == 0 ? 0.0 : (double) expanded1.sum() / n,
+                n == 0 ? 0.0 : (double) expanded2.sum() / n, n == 0 ? 0.0 : (double) levels.sum() / n,
+                peakFrontier.get(), n == 0 ? 0.0 : 100.0 * early.sum() / n));
+        sb.append("\nexpanded per search: ").append(expanded());
+        return sb.toString();
+    }
+}
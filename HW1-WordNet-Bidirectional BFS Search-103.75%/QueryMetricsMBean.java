@@ -0,0 +1,31 @@
+/**
+ * JMX view of QueryMetrics; latencies are in microseconds.
+ */
+public interface QueryMetricsMBean {
+    // names of the timed operations, arguments of the operations below
+    String[] getOperations();
+
+    long count(String operation);
+
+    double meanMicros(String operation);
+
+    double percentileMicros(String operation, double q);
+
+    double maxMicros(String operation);
+
+    long getSearches();
+
+    long getVerticesExpanded1();
+
+    long getVerticesExpanded2();
+
+    long getLevels();
+
+    long getPeakFrontier();
+
+    long getEarlyTerminations();
+
+    String getSummary();
+
+    void reset();
+}
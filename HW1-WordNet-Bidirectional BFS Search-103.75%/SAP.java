@@ -1,22 +1,337 @@
-import edu.princeton.cs.algs4.BreadthFirstDirectedPaths;
 import edu.princeton.cs.algs4.In;
 import edu.princeton.cs.algs4.Digraph;
+import edu.princeton.cs.algs4.StdOut;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
 
 public class SAP {
+    private static final int BATCH_CHUNK = 256; // most queries per task of a batch.
+    private static final int MIN_BATCH_CHUNK = 8; // fewest, so a task is worth scheduling.
 
-    private Digraph graph;
+    // how the bidirectional bfs picks the side to expand next.
+    public enum SearchMode {
+        ALTERNATING, // one level per side in turn.
+        BALANCED     // the side with the smaller frontier.
+    }
+
+    // how vertices are laid out in memory; ids in the API are always those of the input digraph.
+    public enum VertexOrder {
+        INPUT, // as numbered in the input.
+        BFS    // bfs from the sinks along reversed edges, so nearby vertices are stored together.
+    }
+
+    // replaced, never modified, by addVertex and addEdge; V only grows, so a validated vertex stays valid.
+    // Anything but a CSRDigraph is only searched; see csr.
+    private volatile SAPGraph graph;
+    // vertex v of the input is vertex toInternal[v] of graph; both null when the input order is kept.
+    private volatile int[] toInternal, toExternal;
+    private CSRDigraph reverse; // built on first use by reverse(); guarded by this.
+    // bfs state is reused across queries; one workspace per thread keeps queries independent.
+    private final ThreadLocal<BFSWorkspace> workspace;
+    private final ThreadLocal<BitParallelSAP> sweeper;
+    private final SAPCache cache; // null if results are not cached.
+    private volatile AncestorLabelIndex labelIndex; // null if queries search the graph.
+    private volatile DepthIndex depthIndex; // null if the bfs is not pruned by depth.
+    private volatile LandmarkIndex landmarkIndex; // null if there are no distance estimates.
+    private volatile SearchMode searchMode = SearchMode.ALTERNATING;
+    private volatile QueryMetrics metrics; // null if queries are not instrumented.
 
     // constructor takes a digraph (not necessarily a DAG)
     public SAP(Digraph G) {
-        if (G == null) {
+        this(G, null);
+    }
+
+    // results are looked up in and added to cache, which may be shared with other SAP over the same digraph and
+    // in the same VertexOrder: keys hold stored vertex ids, so a cache already used with another order is rejected.
+    public SAP(Digraph G, SAPCache cache) {
+        this(G, cache, VertexOrder.INPUT);
+    }
+
+    // as above, storing the digraph in the given vertex order
+    public SAP(Digraph G, SAPCache cache, VertexOrder order) {
+        this(new CSRDigraph(G), cache, order);
+    }
+
+    /**
+     * Searches graph where it is stored, such as a MappedDigraph, without copying it to the heap. Over such a
+     * graph addVertex, addEdge, nearest and the index builders throw UnsupportedOperationException.
+     */
+    public SAP(SAPGraph graph) {
+        this(graph, null);
+    }
+
+    public SAP(SAPGraph graph, SAPCache cache) {
+        this(graph, cache, VertexOrder.INPUT);
+    }
+
+    // reordering copies the graph, so VertexOrder.BFS needs a CSRDigraph.
+    SAP(SAPGraph graph, SAPCache cache, VertexOrder order) {
+        if (graph == null || order == null) {
             throw new IllegalArgumentException();
         }
-        graph = new Digraph(G);
+        if (cache != null) {
+            cache.bind(order);
+        }
+        if (order == VertexOrder.BFS) {
+            CSRDigraph g = csr(graph);
+            toExternal = g.bfsOrder();
+            toInternal = new int[toExternal.length];
+            for (int i = 0; i < toExternal.length; i++) {
+                toInternal[toExternal[i]] = i;
+            }
+            graph = g.permute(toExternal, toInternal);
+        }
+        this.graph = graph;
+        workspace = ThreadLocal.withInitial(() -> new BFSWorkspace(this.graph.V()));
+        sweeper = ThreadLocal.withInitial(() -> new BitParallelSAP(this.graph.V()));
+        this.cache = cache;
+    }
+
+    // the digraph with the vertex ids of the input
+    CSRDigraph graph() {
+        CSRDigraph g = csr(graph);
+        int[] external = toExternal;
+        int[] internal = toInternal;
+        return external == null ? g : g.permute(internal, external);
+    }
+
+    // number of vertices
+    int V() {
+        return graph.V();
+    }
+
+    int outdegree(int v) {
+        validIndex(v);
+        return graph.outdegree(internal(v));
+    }
+
+    // graph as the in-heap digraph that mutation and the indexes work on
+    private static CSRDigraph csr(SAPGraph graph) {
+        if (!(graph instanceof CSRDigraph)) {
+            throw new UnsupportedOperationException("not supported over " + graph.getClass().getSimpleName());
+        }
+        return (CSRDigraph) graph;
+    }
+
+    private int internal(int v) {
+        int[] map = toInternal;
+        return map == null ? v : map[v];
+    }
+
+    private int external(int v) {
+        int[] map = toExternal;
+        return map == null || v == -1 ? v : map[v];
+    }
+
+    private int[] external(int[] path) {
+        int[] map = toExternal;
+        if (map != null) {
+            for (int i = 0; i < path.length; i++) {
+                path[i] = map[path[i]];
+            }
+        }
+        return path;
+    }
+
+    // the result cache; null if there is none.
+    public SAPCache cache() {
+        return cache;
+    }
+
+    /**
+     * Adds a vertex with no edges.
+     *
+     * @return the new vertex, V - 1.
+     */
+    public synchronized int addVertex() {
+        CSRDigraph g = csr(graph).withVertex();
+        if (toInternal != null) {
+            // the new vertex keeps its id; the maps are replaced before graph, which validates the id.
+            int[] internal = Arrays.copyOf(toInternal, g.V());
+            int[] external = Arrays.copyOf(toExternal, g.V());
+            internal[g.V() - 1] = g.V() - 1;
+            external[g.V() - 1] = g.V() - 1;
+            toInternal = internal;
+            toExternal = external;
+        }
+        if (reverse != null) {
+            reverse = reverse.withVertex();
+        }
+        if (depthIndex != null) {
+            depthIndex = depthIndex.withVertex(g);
+        }
+        graph = g;
+        return g.V() - 1;
+    }
+
+    /**
+     * Adds edge v->w. Only results involving v or a vertex that reaches v can change, so only those are dropped
+     * from the cache and the label index, and only their depths are recomputed; the rest stay in use. The depth
+     * index is dropped if the edge closes a cycle.
+     * <p>
+     * Mutations are serialized, but not against queries: a query running concurrently with addEdge sees the graph
+     * before or after the edge. Stale labels are retired before the new graph is published, and the cache is
+     * invalidated last, which also drops the results of queries that started before it; see SAPCache.generation.
+     */
+    public synchronized void addEdge(int v, int w) {
+        validIndex(v);
+        validIndex(w);
+        v = internal(v);
+        w = internal(w);
+        reverse = reverse().withEdge(w, v);
+        CSRDigraph g = csr(graph).withEdge(v, w);
+
+        AncestorLabelIndex index = labelIndex;
+        DepthIndex depths = depthIndex;
+        int[] vertices = null;
+        if (cache != null || index != null || depths != null) {
+            // the vertices that reach v, in ascending order
+            BFSWorkspace ws = workspace.get();
+            ws.reset(reverse.V());
+            ws.addSource1(v);
+            AncestorDepths affected = ws.ancestorDepths(reverse);
+            vertices = new int[affected.size()];
+            for (int i = 0; i < vertices.length; i++) {
+                vertices[i] = affected.vertex(i);
+            }
+        }
+        if (index != null) {
+            // labels of the other vertices hold on either graph.
+            labelIndex = index.withStale(vertices);
+        }
+        graph = g;
+        // a new edge can shorten undirected distances, which would break the lower bounds.
+        landmarkIndex = null;
+        if (depths != null) {
+            // queries use depths only with the graph they were computed for, see DepthIndex.isFor.
+            depthIndex = depths.withEdge(g, reverse, vertices);
+        }
+        if (cache != null) {
+            cache.invalidate(vertices);
+        }
+    }
+
+    // whether there is a directed path from v to w
+    public boolean hasPath(int v, int w) {
+        validIndex(v);
+        validIndex(w);
+        v = internal(v);
+        w = internal(w);
+        SAPGraph g = graph;
+        BFSWorkspace ws = workspace.get();
+        ws.reset(g.V());
+        ws.addSource1(v);
+        AncestorDepths reachable = ws.ancestorDepths(g);
+        int lo = 0, hi = reachable.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (reachable.vertex(mid) < w) {
+                lo = mid + 1;
+            } else if (reachable.vertex(mid) > w) {
+                hi = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the ancestor label index, after which length and ancestor queries merge labels instead of searching
+     * the graph. Worthwhile for rooted DAGs, where ancestor sets are small.
+     *
+     * @return the index, or null if it would exceed maxLabels entries; queries then keep using bfs.
+     */
+    public AncestorLabelIndex buildLabelIndex(long maxLabels) {
+        if (maxLabels < 0) {
+            throw new IllegalArgumentException();
+        }
+        AncestorLabelIndex index = AncestorLabelIndex.build(csr(graph), maxLabels);
+        if (index != null) {
+            labelIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Builds the depth index, after which the bfs skips vertices that cannot lead to a shorter ancestral path.
+     * Kept up to date by addVertex and addEdge.
+     *
+     * @return the index, or null if the digraph has a cycle; queries then search without pruning.
+     */
+    public synchronized DepthIndex buildDepthIndex() {
+        depthIndex = DepthIndex.build(csr(graph));
+        return depthIndex;
+    }
+
+    /**
+     * Builds the landmark index for lengthEstimate, with distances to count landmark vertices. Dropped by addEdge.
+     *
+     * @return the index with its size and build time.
+     */
+    public synchronized LandmarkIndex buildLandmarkIndex(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException();
+        }
+        landmarkIndex = LandmarkIndex.build(csr(graph), count);
+        return landmarkIndex;
+    }
+
+    // the landmark index; null if there is none.
+    public LandmarkIndex landmarkIndex() {
+        return landmarkIndex;
+    }
+
+    // the depth index; null if there is none.
+    public DepthIndex depthIndex() {
+        return depthIndex;
+    }
+
+    // the label index; null if there is none.
+    public AncestorLabelIndex labelIndex() {
+        return labelIndex;
+    }
+
+    // times length and ancestor queries and counts bfs work into metrics; null turns instrumentation off.
+    public void setMetrics(QueryMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public QueryMetrics metrics() {
+        return metrics;
+    }
+
+    // start time of a query, 0 if it is not timed
+    private long startTimer() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    // records the latency of a query timed since start, and passes its result through
+    private int stopTimer(QueryMetrics.Operation op, long start, int res) {
+        QueryMetrics m = metrics;
+        if (m != null && start != 0) {
+            m.record(op, System.nanoTime() - start);
+        }
+        return res;
+    }
+
+    public SearchMode searchMode() {
+        return searchMode;
+    }
+
+    public void setSearchMode(SearchMode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException();
+        }
+        searchMode = mode;
     }
 
     private void validIndex(int i) {
@@ -27,158 +342,477 @@ public class SAP {
 
     // length of shortest ancestral path between v and w; -1 if no such path
     public int length(int v, int w) {
+        long start = startTimer();
         validIndex(v);
         validIndex(w);
+        v = internal(v);
+        w = internal(w);
 
-        ArrayList<Integer> tmp1 = new ArrayList<>();
-        tmp1.add(v);
-        ArrayList<Integer> tmp2 = new ArrayList<>();
-        tmp2.add(w);
-
-        return length(tmp1, tmp2);
+        int res = cache != null ? cached(v, w)[0] : bfs(v, w).length();
+        return stopTimer(QueryMetrics.Operation.LENGTH, start, res);
     }
 
     // a common ancestor of v and w that participates in a shortest ancestral path; -1 if no such path
     public int ancestor(int v, int w) {
+        long start = startTimer();
         validIndex(v);
         validIndex(w);
+        v = internal(v);
+        w = internal(w);
 
-        ArrayList<Integer> tmp1 = new ArrayList<>();
-        tmp1.add(v);
-        ArrayList<Integer> tmp2 = new ArrayList<>();
-        tmp2.add(w);
-        return ancestor(tmp1, tmp2);
+        int res = external(cache != null ? cached(v, w)[1] : bfs(v, w).ancestor());
+        return stopTimer(QueryMetrics.Operation.ANCESTOR, start, res);
     }
 
-    // length of shortest ancestral path between any vertex in v and any vertex in w; -1 if no such path
+    /**
+     * Length of a shortest ancestral path between any vertex in v and any vertex in w; -1 if no such path. Each set
+     * is read once: every vertex is validated and seeded as it is read, and a vertex listed twice is seeded once. If
+     * the sets share a vertex the answer is 0, found while seeding, and no search runs.
+     */
     public int length(Iterable<Integer> v, Iterable<Integer> w) {
+        long start = startTimer();
+        return stopTimer(QueryMetrics.Operation.LENGTH, start, sets(v, w)[0]);
+    }
+
+    // a common ancestor that participates in shortest ancestral path; -1 if no such path
+    public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
+        long start = startTimer();
+        return stopTimer(QueryMetrics.Operation.ANCESTOR, start, external(sets(v, w)[1]));
+    }
+
+    // as length(Iterable, Iterable), without boxing
+    public int length(int[] v, int[] w) {
+        long start = startTimer();
+        return stopTimer(QueryMetrics.Operation.LENGTH, start, sets(v, w)[0]);
+    }
+
+    public int ancestor(int[] v, int[] w) {
+        long start = startTimer();
+        return stopTimer(QueryMetrics.Operation.ANCESTOR, start, external(sets(v, w)[1]));
+    }
+
+    // as length(Iterable, Iterable), consuming each stream once
+    public int length(IntStream v, IntStream w) {
         if (v == null || w == null) {
             throw new IllegalArgumentException();
         }
+        return length(v.toArray(), w.toArray());
+    }
 
-        for (Integer i : v) {
-            validIndex(i);
-        }
-        for (Integer i : w) {
-            validIndex(i);
+    public int ancestor(IntStream v, IntStream w) {
+        if (v == null || w == null) {
+            throw new IllegalArgumentException();
         }
+        return ancestor(v.toArray(), w.toArray());
+    }
 
-        return bfs(v, w)[0];
+    // {length, internal ancestor} between the vertex sets v and w
+    private int[] sets(Iterable<Integer> v, Iterable<Integer> w) {
+        if (v == null || w == null) {
+            throw new IllegalArgumentException();
+        }
+        long generation = cache == null ? 0 : cache.generation();
+        SAPGraph g = graph;
+        BFSWorkspace ws = workspace.get();
+        ws.reset(g.V());
+        for (int x : v) {
+            validIndex(x);
+            ws.addSource1(internal(x));
+        }
+        for (int x : w) {
+            validIndex(x);
+            ws.addSource2(internal(x));
+        }
+        return seeded(ws, g, generation);
     }
 
-    // a common ancestor that participates in shortest ancestral path; -1 if no such path
-    public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
+    private int[] sets(int[] v, int[] w) {
         if (v == null || w == null) {
             throw new IllegalArgumentException();
         }
+        long generation = cache == null ? 0 : cache.generation();
+        SAPGraph g = graph;
+        BFSWorkspace ws = workspace.get();
+        ws.reset(g.V());
+        for (int x : v) {
+            validIndex(x);
+            ws.addSource1(internal(x));
+        }
+        for (int x : w) {
+            validIndex(x);
+            ws.addSource2(internal(x));
+        }
+        return seeded(ws, g, generation);
+    }
 
-        for (Integer i : v) {
-            validIndex(i);
+    // {length, internal ancestor} of a query seeded into ws on g, from the cache if it has one; generation is that
+    // of the cache before g was read.
+    private int[] seeded(BFSWorkspace ws, SAPGraph g, long generation) {
+        // seeding a vertex of both sets recorded it as an ancestor at distance 0.
+        if (ws.ancestor() != -1) {
+            return new int[]{0, ws.ancestor()};
+        }
+        if (cache == null) {
+            search(ws, g);
+            return new int[]{ws.length(), ws.ancestor()};
         }
-        for (Integer i : w) {
+        SAPCache.Key key = SAPCache.key(ws.sources1(), ws.sources2());
+        int[] res = cache.get(key);
+        if (res == null) {
+            search(ws, g);
+            res = new int[]{ws.length(), ws.ancestor()};
+            cache.put(key, res, generation);
+        }
+        return res;
+    }
+
+    // a shortest ancestral path between v and w; null if no such path
+    public AncestralPath path(int v, int w) {
+        validIndex(v);
+        validIndex(w);
+        SAPGraph g = graph;
+        BFSWorkspace ws = workspace.get();
+        ws.reset(g.V());
+        ws.addSource1(internal(v));
+        ws.addSource2(internal(w));
+        return path(ws, g);
+    }
+
+    // a shortest ancestral path between any vertex in v and any vertex in w; null if no such path
+    public AncestralPath path(Iterable<Integer> v, Iterable<Integer> w) {
+        int[] a = vertices(v);
+        int[] b = vertices(w);
+        SAPGraph g = graph;
+        BFSWorkspace ws = workspace.get();
+        ws.reset(g.V());
+        for (int i : a) {
+            ws.addSource1(internal(i));
+        }
+        for (int i : b) {
+            ws.addSource2(internal(i));
+        }
+        return path(ws, g);
+    }
+
+    // the vertices of v, validated while they are copied, so v is iterated once and may be one-shot
+    private int[] vertices(Iterable<Integer> v) {
+        if (v == null) {
+            throw new IllegalArgumentException();
+        }
+        int n = 0;
+        int[] ids = new int[8];
+        for (int i : v) {
             validIndex(i);
+            if (n == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * n);
+            }
+            ids[n++] = i;
         }
+        return Arrays.copyOf(ids, n);
+    }
 
-        return bfs(v, w)[1];
+    // both halves come from the parents the bfs records, so this always searches the graph, never the labels.
+    private AncestralPath path(BFSWorkspace ws, SAPGraph g) {
+        searchGraph(ws, g);
+        if (ws.ancestor() == -1) {
+            return null;
+        }
+        return new AncestralPath(external(ws.path1()), external(ws.path2()));
     }
 
     /**
-     * Using bidirectional bfs search
-     *
-     * @return first element if length, second is ancestor.
+     * Length of a shortest ancestral path between any vertex in v and any vertex in w, estimated from the landmark
+     * index in a few memory reads. The estimate is an upper bound, used when it is within maxError of the lower
+     * bound; otherwise, or without an index, the length is searched exactly.
      */
-    private int[] bfs(Iterable<Integer> v, Iterable<Integer> w) {
-        Queue<Integer> queue1 = new LinkedList<>();
-        Queue<Integer> queue2 = new LinkedList<>();
-
-        // Maps from vertex to smallest depth bfs from starting points.
-        HashMap<Integer, Integer> map1 = new HashMap<>();
-        HashMap<Integer, Integer> map2 = new HashMap<>();
+    public DistanceEstimate lengthEstimate(Iterable<Integer> v, Iterable<Integer> w, int maxError) {
+        if (maxError < 0) {
+            throw new IllegalArgumentException();
+        }
+        int[] vertices1 = vertices(v);
+        int[] vertices2 = vertices(w);
+        LandmarkIndex index = landmarkIndex;
+        if (index != null) {
+            int[] a = landmarkSources(index, vertices1);
+            int[] b = landmarkSources(index, vertices2);
+            if (a != null && b != null) {
+                int[] bounds = index.bounds(a, b);
+                if (bounds[1] != Integer.MAX_VALUE && bounds[1] - bounds[0] <= maxError) {
+                    return new DistanceEstimate(bounds[1], bounds[0], bounds[0] == bounds[1]);
+                }
+            }
+        }
+        int length = length(vertices1, vertices2);
+        return new DistanceEstimate(length, length, true);
+    }
 
-        for (int i : v) {
-            queue1.add(i);
+    // the internal ids of the validated vertices; null if the index lacks one of them
+    private int[] landmarkSources(LandmarkIndex index, int[] vertices) {
+        int[] ids = new int[vertices.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = internal(vertices[i]);
+            if (!index.covers(ids[i])) {
+                return null;
+            }
         }
-        for (int i : w) {
-            queue2.add(i);
+        return ids;
+    }
+
+    // every vertex reachable from v with its depth, for answering many queries that involve v. The vertices are
+    // internal ids, which only matters for comparing them across SAP instances.
+    AncestorDepths ancestorDepths(Iterable<Integer> v) {
+        int[] a = vertices(v);
+        SAPGraph g = graph;
+        BFSWorkspace ws = workspace.get();
+        ws.reset(g.V());
+        for (int i : a) {
+            ws.addSource1(internal(i));
         }
+        return ws.ancestorDepths(g);
+    }
+
+    // lengths of shortest ancestral paths between v[i] and w[i], in input order
+    public int[] lengths(int[] v, int[] w) {
+        return lengths(v, w, ForkJoinPool.commonPool());
+    }
 
-        int depth1 = 0, depth2 = 0;
+    // as above, with the queries fanned out over executor
+    public int[] lengths(int[] v, int[] w, Executor executor) {
+        validPairs(v, w, executor);
+        return batch(v.length, i -> length(v[i], w[i]), executor);
+    }
 
-        int[] res = new int[]{Integer.MAX_VALUE, -1};
-        int remainingSteps = -1;
-        boolean firstTimeCovisited = false;
-        while ((!queue1.isEmpty() || !queue2.isEmpty()) && (remainingSteps == -1 || remainingSteps > 0)) {
-            if (remainingSteps > 0) {
-                remainingSteps--;
+    // common ancestors on shortest ancestral paths between v[i] and w[i], in input order
+    public int[] ancestors(int[] v, int[] w) {
+        return ancestors(v, w, ForkJoinPool.commonPool());
+    }
+
+    public int[] ancestors(int[] v, int[] w, Executor executor) {
+        validPairs(v, w, executor);
+        return batch(v.length, i -> ancestor(v[i], w[i]), executor);
+    }
+
+    // lengths of shortest ancestral paths between the vertex sets v.get(i) and w.get(i), in input order
+    public int[] lengths(List<? extends Iterable<Integer>> v, List<? extends Iterable<Integer>> w) {
+        return lengths(v, w, ForkJoinPool.commonPool());
+    }
+
+    public int[] lengths(List<? extends Iterable<Integer>> v, List<? extends Iterable<Integer>> w, Executor executor) {
+        validPairs(v, w, executor);
+        return batch(v.size(), i -> length(v.get(i), w.get(i)), executor);
+    }
+
+    // common ancestors on shortest ancestral paths between the vertex sets v.get(i) and w.get(i), in input order
+    public int[] ancestors(List<? extends Iterable<Integer>> v, List<? extends Iterable<Integer>> w) {
+        return ancestors(v, w, ForkJoinPool.commonPool());
+    }
+
+    public int[] ancestors(List<? extends Iterable<Integer>> v, List<? extends Iterable<Integer>> w,
+                           Executor executor) {
+        validPairs(v, w, executor);
+        return batch(v.size(), i -> ancestor(v.get(i), w.get(i)), executor);
+    }
+
+    /**
+     * Lengths and ancestors of shortest ancestral paths between v[i] and w[i], in input order. Answers 64 queries
+     * per sweep of the graph, which suits large batches better than one bfs per query.
+     *
+     * @return {lengths, ancestors}
+     */
+    public int[][] lengthsAndAncestors(int[] v, int[] w) {
+        return lengthsAndAncestors(v, w, ForkJoinPool.commonPool());
+    }
+
+    // as above, with the sweeps fanned out over executor
+    public int[][] lengthsAndAncestors(int[] v, int[] w, Executor executor) {
+        validPairs(v, w, executor);
+        for (int i = 0; i < v.length; i++) {
+            validIndex(v[i]);
+            validIndex(w[i]);
+        }
+        return sweep(v.length, (bp, from, to) -> {
+            for (int i = from; i < to; i++) {
+                bp.addSource1(i - from, internal(v[i]));
+                bp.addSource2(i - from, internal(w[i]));
             }
+        }, executor);
+    }
 
-            // find adj of q1 elements.
-            Queue<Integer> tmpQ1 = new LinkedList<>();
-            while (!queue1.isEmpty()) {
-                int node = queue1.poll();
-                // consider the situation where 1->2, 1->3, 2->3, then while processing 2, 3 is added to open set again.
-                if (map1.containsKey(node)) {
-                    continue;
-                }
+    // lengths and ancestors between the vertex sets v.get(i) and w.get(i), 64 queries per sweep
+    public int[][] lengthsAndAncestors(List<? extends Iterable<Integer>> v, List<? extends Iterable<Integer>> w) {
+        return lengthsAndAncestors(v, w, ForkJoinPool.commonPool());
+    }
 
-                // co-visited a node
-                if (map2.containsKey(node)) {
-                    int newLength = depth1 + map2.get(node);
-                    if (newLength < res[0]) {
-                        res[0] = newLength;
-                        res[1] = node;
-                        if (!firstTimeCovisited) {
-                            remainingSteps = Integer.max(depth1, map2.get(node));
-                        }
-                        firstTimeCovisited = true;
-                    }
+    public int[][] lengthsAndAncestors(List<? extends Iterable<Integer>> v, List<? extends Iterable<Integer>> w,
+                                      Executor executor) {
+        validPairs(v, w, executor);
+        int[][] a = new int[v.size()][];
+        int[][] b = new int[w.size()][];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = vertices(v.get(i));
+            b[i] = vertices(w.get(i));
+        }
+        return sweep(a.length, (bp, from, to) -> {
+            for (int i = from; i < to; i++) {
+                for (int x : a[i]) {
+                    bp.addSource1(i - from, internal(x));
                 }
-                // prepare for next iteration
-                for (int vertex : graph.adj(node)) {
-                    if (!map1.containsKey(vertex)) {
-                        tmpQ1.add(vertex);
-                    }
+                for (int x : b[i]) {
+                    bp.addSource2(i - from, internal(x));
                 }
-                map1.put(node, depth1);
             }
-            queue1 = tmpQ1;
-            depth1++;
-
-            // q2 elements;
-            Queue<Integer> tmpQ2 = new LinkedList<>();
-            while (!queue2.isEmpty()) {
-                int node = queue2.poll();
-                if (map2.containsKey(node)) {
-                    continue;
-                }
+        }, executor);
+    }
+
+    // receives vertices in order of distance; returns false to end the search.
+    interface DistanceVisitor {
+        boolean visit(int vertex, int distance);
+    }
 
-                // co-visited a node
-                if (map1.containsKey(node)) {
-                    int newLength = map1.get(node) + depth2;
-                    if (newLength < res[0]) {
-                        res[0] = newLength;
-                        res[1] = node;
-                        if (!firstTimeCovisited) {
-                            remainingSteps = Integer.max(map1.get(node), depth2);
-                        }
-                        firstTimeCovisited = true;
-                    }
+    /**
+     * Visits vertices in nondecreasing order of their ancestral distance from the set v, which is
+     * length(v, {vertex}), until the visitor returns false. One upward bfs finds the ancestors of v, and one
+     * downward bfs over the reverse digraph, seeded by each ancestor at its depth, reaches the rest.
+     */
+    void nearest(Iterable<Integer> v, DistanceVisitor visitor) {
+        if (visitor == null) {
+            throw new IllegalArgumentException();
+        }
+        int[] a = vertices(v);
+        CSRDigraph g, r;
+        synchronized (this) {
+            g = csr(graph);
+            r = reverse();
+        }
+        BFSWorkspace ws = workspace.get();
+        ws.reset(g.V());
+        for (int i : a) {
+            ws.addSource1(internal(i));
+        }
+        ws.descend(g, r, (vertex, distance) -> visitor.visit(external(vertex), distance));
+    }
+
+    // the reverse digraph, built on first use and kept current by addVertex and addEdge.
+    private synchronized CSRDigraph reverse() {
+        if (reverse == null) {
+            reverse = csr(graph).reverse();
+        }
+        return reverse;
+    }
+
+    // seeds queries from .. to - 1 of a batch into a sweep, query i as bit i - from.
+    private interface SweepSeeder {
+        void seed(BitParallelSAP bp, int from, int to);
+    }
+
+    private int[][] sweep(int n, SweepSeeder seeder, Executor executor) {
+        int[] lengths = new int[n];
+        int[] ancestors = new int[n];
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[(n + BitParallelSAP.WIDTH - 1) / BitParallelSAP.WIDTH];
+        for (int t = 0; t < tasks.length; t++) {
+            int from = t * BitParallelSAP.WIDTH;
+            int to = Math.min(n, from + BitParallelSAP.WIDTH);
+            tasks[t] = CompletableFuture.runAsync(() -> {
+                SAPGraph g = graph;
+                BitParallelSAP bp = sweeper.get();
+                bp.reset(g.V());
+                seeder.seed(bp, from, to);
+                bp.run(g, lengths, ancestors, from);
+                for (int i = from; i < to; i++) {
+                    ancestors[i] = external(ancestors[i]);
                 }
-                // prepare for next iteration
-                for (int vertex : graph.adj(node)) {
-                    if (!map2.containsKey(vertex)) {
-                        tmpQ2.add(vertex);
-                    }
+            }, executor);
+        }
+        CompletableFuture.allOf(tasks).join();
+        return new int[][]{lengths, ancestors};
+    }
+
+    private static void validPairs(int[] v, int[] w, Executor executor) {
+        if (v == null || w == null || executor == null || v.length != w.length) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    private static void validPairs(List<?> v, List<?> w, Executor executor) {
+        if (v == null || w == null || executor == null || v.size() != w.size()) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Runs query(0) .. query(n - 1) in chunks on executor, at least one chunk per processor unless that would make
+     * chunks smaller than MIN_BATCH_CHUNK. Each thread searches on its own workspace, and every result is written to
+     * its own slot, so the output keeps input order.
+     */
+    private static int[] batch(int n, IntUnaryOperator query, Executor executor) {
+        int[] res = new int[n];
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int chunk = Math.max(MIN_BATCH_CHUNK, Math.min(BATCH_CHUNK, (n + parallelism - 1) / parallelism));
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[(n + chunk - 1) / chunk];
+        for (int t = 0; t < tasks.length; t++) {
+            int from = t * chunk;
+            int to = Math.min(n, from + chunk);
+            tasks[t] = CompletableFuture.runAsync(() -> {
+                for (int i = from; i < to; i++) {
+                    res[i] = query.applyAsInt(i);
                 }
-                map2.put(node, depth2);
+            }, executor);
+        }
+        try {
+            CompletableFuture.allOf(tasks).join();
+        } catch (CompletionException e) {
+            // surface an invalid query the same way the single-query methods do.
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-            queue2 = tmpQ2;
-            depth2++;
+            throw e;
         }
-        if (res[0] == Integer.MAX_VALUE) {
-            return new int[]{-1, -1};
+        return res;
+    }
+
+    // {length, ancestor} from the cache, searching on a miss.
+    private int[] cached(int v, int w) {
+        long generation = cache.generation(); // before bfs reads the graph
+        SAPCache.Key key = SAPCache.key(v, w);
+        int[] res = cache.get(key);
+        if (res == null) {
+            BFSWorkspace ws = bfs(v, w);
+            res = new int[]{ws.length(), ws.ancestor()};
+            cache.put(key, res, generation);
+        }
+        return res;
+    }
+
+    /**
+     * Using bidirectional bfs search on this thread's workspace.
+     *
+     * @return the workspace holding length and ancestor of the search.
+     */
+    private BFSWorkspace bfs(int v, int w) {
+        SAPGraph g = graph;
+        BFSWorkspace ws = workspace.get();
+        ws.reset(g.V());
+        ws.addSource1(v);
+        ws.addSource2(w);
+        search(ws, g);
+        return ws;
+    }
+
+    private void search(BFSWorkspace ws, SAPGraph g) {
+        AncestorLabelIndex index = labelIndex;
+        if (index != null && ws.labelsCover(index)) {
+            ws.searchLabels(index);
         } else {
-            return res;
+            searchGraph(ws, g);
+        }
+    }
+
+    private void searchGraph(BFSWorkspace ws, SAPGraph g) {
+        DepthIndex depths = depthIndex;
+        ws.search(g, depths != null && depths.isFor(g) ? depths : null, searchMode == SearchMode.BALANCED);
+        QueryMetrics m = metrics;
+        if (m != null) {
+            m.recordSearch(ws.expanded1(), ws.expanded2(), ws.peakFrontier(), ws.levels(), ws.stoppedEarly());
         }
     }
 
@@ -194,29 +828,7 @@ public class SAP {
         int length = sap.length(v, w);
         int ancestor = sap.ancestor(v, w);
         StdOut.printf("length = %d, ancestor = %d\n", length, ancestor);
-
-
-        BreadthFirstDirectedPaths a = new BreadthFirstDirectedPaths(G, v);
-        BreadthFirstDirectedPaths b = new BreadthFirstDirectedPaths(G, w);
-
-        for (Integer integer : a.pathTo(60600)) {
-            System.out.print(" " + integer);
-        }
-        System.out.println();
-        for (Integer integer : b.pathTo(60600)) {
-            System.out.print(" " + integer);
-        }
-        System.out.println();
-
-
-        for (Integer integer : a.pathTo(81004)) {
-            System.out.print(" " + integer);
-        }
-        System.out.println();
-        for (Integer integer : b.pathTo(81004)) {
-            System.out.print(" " + integer);
-        }
-        System.out.println();
+        StdOut.println(sap.path(v, w));
 
         // my trick test
         s = "./wordnet/myTrickyTest";
@@ -232,6 +844,6 @@ public class SAP {
         length = sap.length(va, wa);
         ancestor = sap.ancestor(va, wa);
         StdOut.printf("length = %d, ancestor = %d\n", length, ancestor);
-
+        StdOut.println(sap.path(va, wa));
     }
-}
\ No newline at end of file
+}
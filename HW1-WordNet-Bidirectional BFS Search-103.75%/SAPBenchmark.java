@@ -0,0 +1,85 @@
+import edu.princeton.cs.algs4.Digraph;
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Compares SAP vertex orders and search modes, without and with the depth index, on seeded random queries.
+// usage: java SAPBenchmark [digraph file] [queries] [seed]
+public class SAPBenchmark {
+    private static final int ROUNDS = 5; // the first round is warm-up.
+
+    public static void main(String[] args) {
+        String file = args.length > 0 ? args[0] : "./wordnet/digraph-wordnet.txt";
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+
+        Digraph G = new Digraph(new In(file));
+        Random random = new Random(seed);
+
+        // single vertex pairs, and pairs of sets with 1-16 vertices on one side and 1 on the other.
+        int[] v = new int[queries], w = new int[queries];
+        List<List<Integer>> setsV = new ArrayList<>(), setsW = new ArrayList<>();
+        for (int i = 0; i < queries; i++) {
+            v[i] = random.nextInt(G.V());
+            w[i] = random.nextInt(G.V());
+            List<Integer> set = new ArrayList<>();
+            for (int k = 1 + random.nextInt(16); k > 0; k--) {
+                set.add(random.nextInt(G.V()));
+            }
+            setsV.add(set);
+            setsW.add(List.of(random.nextInt(G.V())));
+        }
+
+        StdOut.printf("%s: V = %d, E = %d, %d queries, seed %d\n", file, G.V(), G.E(), queries, seed);
+        long[] expected = null;
+        for (SAP.VertexOrder order : SAP.VertexOrder.values()) {
+            SAP sap = new SAP(G, null, order);
+            for (SAP.SearchMode mode : SAP.SearchMode.values()) {
+                expected = run(sap, order + "/" + mode, mode, v, w, setsV, setsW, expected);
+            }
+            // a digraph with a cycle has no depth index
+            if (sap.buildDepthIndex() != null) {
+                for (SAP.SearchMode mode : SAP.SearchMode.values()) {
+                    expected = run(sap, order + "/" + mode + "+depth", mode, v, w, setsV, setsW, expected);
+                }
+            }
+        }
+    }
+
+    // times length queries in mode and checks they sum to the expected checksums, if any; returns the checksums.
+    private static long[] run(SAP sap, String name, SAP.SearchMode mode, int[] v, int[] w,
+                              List<List<Integer>> setsV, List<List<Integer>> setsW, long[] expected) {
+        int queries = v.length;
+        sap.setSearchMode(mode);
+        long[] checksums = new long[2];
+        double pairNanos = 0, setNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < queries; i++) {
+                sum += sap.length(v[i], w[i]);
+            }
+            long mid = System.nanoTime();
+            long setSum = 0;
+            for (int i = 0; i < queries; i++) {
+                setSum += sap.length(setsV.get(i), setsW.get(i));
+            }
+            long end = System.nanoTime();
+            if (round > 0) {
+                pairNanos += (double) (mid - start) / queries / (ROUNDS - 1);
+                setNanos += (double) (end - mid) / queries / (ROUNDS - 1);
+            }
+            checksums[0] = sum;
+            checksums[1] = setSum;
+        }
+        StdOut.printf("%-24s pair %8.0f ns/query   set %8.0f ns/query   checksum %d/%d\n",
+                name, pairNanos, setNanos, checksums[0], checksums[1]);
+        if (expected != null && (expected[0] != checksums[0] || expected[1] != checksums[1])) {
+            throw new IllegalStateException(name + " disagrees on lengths");
+        }
+        return checksums;
+    }
+}
@@ -0,0 +1,219 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe LRU cache of shortest ancestral path results.
+ * <p>
+ * A query (v, w) is keyed by the sorted, de-duplicated vertex sets of both sides, ordered so that (v, w) and
+ * (w, v) share one entry. Vertices are the ids SAP stores them under, which depend on its VertexOrder, so a cache
+ * serves SAPs of one order only. The value is the {length, ancestor} pair a single bfs produces, so length and
+ * ancestor queries on the same pair only search once.
+ * <p>
+ * Keys are spread over segments by hash, each an LRU map with its own lock and an equal share of the capacity, so
+ * queries on different threads rarely wait for each other. Eviction is least recently used within a segment, which
+ * approximates it over the whole cache.
+ * <p>
+ * A query that races a graph mutation may have searched the graph from before it. Queries therefore read the
+ * generation before they read the graph and hand it to put, which drops the result if invalidate or clear ran in
+ * between.
+ */
+public class SAPCache {
+    private final int capacity;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final AtomicLong generation = new AtomicLong(); // advanced by invalidate and clear
+    private final AtomicReference<SAP.VertexOrder> order = new AtomicReference<>(); // of the SAPs using it
+
+    // one lock's share of the cache; access order makes iteration order least recently used first.
+    private final class Segment extends LinkedHashMap<Key, int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    // cache holding at most capacity results
+    public SAPCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = capacity;
+        // a power of two, about four per processor, and never more than there are entries to share out.
+        int count = Math.min(Integer.highestOneBit(4 * Runtime.getRuntime().availableProcessors() - 1) << 1,
+                Integer.highestOneBit(capacity));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+    }
+
+    // records that a SAP storing vertices in order uses this cache; throws if one with another order does.
+    void bind(SAP.VertexOrder order) {
+        if (!this.order.compareAndSet(null, order) && this.order.get() != order) {
+            throw new IllegalArgumentException("cache is in use with vertex order " + this.order.get());
+        }
+    }
+
+    private Segment segment(Key key) {
+        int h = key.hash * 0x9E3779B9;
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    static Key key(int v, int w) {
+        return new Key(new int[]{v}, new int[]{w});
+    }
+
+    // v and w must hold distinct vertices; they are sorted in place and kept by the key.
+    static Key key(int[] v, int[] w) {
+        Arrays.sort(v);
+        Arrays.sort(w);
+        return new Key(v, w);
+    }
+
+    // {length, ancestor} of the query, or null if it is not cached.
+    int[] get(Key key) {
+        Segment segment = segment(key);
+        int[] res;
+        synchronized (segment) {
+            res = segment.get(key);
+        }
+        if (res == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return res;
+    }
+
+    // to be read before the graph a query searches, and passed to put with its result
+    long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Caches res, {length, ancestor}, which must not be modified afterwards; nothing is cached if the cache has been
+     * invalidated or cleared since generation was read. Checking under the segment lock leaves no gap: an
+     * invalidate that advances the generation after the check removes the entry when it reaches the segment.
+     */
+    void put(Key key, int[] res, long generation) {
+        Segment segment = segment(key);
+        synchronized (segment) {
+            if (this.generation.get() == generation) {
+                segment.put(key, res);
+            }
+        }
+    }
+
+    // drops every result whose query involves one of the sorted vertices
+    void invalidate(int[] vertices) {
+        generation.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.keySet().removeIf(key -> intersects(key.first, vertices) || intersects(key.second, vertices));
+            }
+        }
+    }
+
+    private static boolean intersects(int[] keyVertices, int[] vertices) {
+        for (int v : keyVertices) {
+            if (Arrays.binarySearch(vertices, v) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        long hits = hits(), misses = misses();
+        long lookups = hits + misses;
+        double hitRate = lookups == 0 ? 0 : (double) hits / lookups;
+        return String.format("size=%d/%d hits=%d misses=%d evictions=%d hitRate=%.3f",
+                size(), capacity, hits, misses, evictions(), hitRate);
+    }
+
+    // symmetric key: the lexicographically smaller set always comes first.
+    static final class Key {
+        private final int[] first, second;
+        private final int hash;
+
+        private Key(int[] v, int[] w) {
+            if (Arrays.compare(v, w) <= 0) {
+                first = v;
+                second = w;
+            } else {
+                first = w;
+                second = v;
+            }
+            hash = 31 * Arrays.hashCode(first) + Arrays.hashCode(second);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return hash == that.hash && Arrays.equals(first, that.first) && Arrays.equals(second, that.second);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * Read access to a digraph as SAP searches it, in compressed sparse row form: the vertices adjacent from v are
+ * target(start(v)) .. target(start(v + 1) - 1).
+ * <p>
+ * SAP searches an in-heap digraph through its backing arrays and any other implementation, such as MappedDigraph,
+ * through these methods. Only the in-heap form supports mutation, vertex reordering and the indexes.
+ */
+public interface SAPGraph {
+    // number of vertices
+    int V();
+
+    // index of the first edge out of v; start(V()) is the number of edges
+    long start(int v);
+
+    // the vertex edge e points to
+    int target(long e);
+
+    default int outdegree(int v) {
+        return (int) (start(v + 1) - start(v));
+    }
+}
@@ -0,0 +1,87 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Seeded generator of WordNet-shaped input files of any size, for benchmarks beyond the real data.
+ * <p>
+ * Synsets are created in topological order: each picks a uniformly random earlier synset as hypernym, so depths
+ * grow like ln V as in a real taxonomy, and 3% pick a second one, about the share of WordNet synsets with several
+ * hypernyms. The first synset is the single root. Ids are then shuffled, since WordNet ids are not topologically
+ * sorted either. Every synset has its own noun, 30% a second one, and 10% share a noun with an earlier synset.
+ */
+class SyntheticWordNet {
+    private SyntheticWordNet() {
+    }
+
+    // writes V synsets to synsets and their hypernyms to hypernyms; the same seed writes the same files.
+    static void write(int V, long seed, Path synsets, Path hypernyms) throws IOException {
+        if (V <= 0) {
+            throw new IllegalArgumentException();
+        }
+        Random random = new Random(seed);
+        int[] parent1 = new int[V];
+        int[] parent2 = new int[V];
+        int[] shared = new int[V];
+        boolean[] second = new boolean[V];
+        for (int t = 0; t < V; t++) {
+            parent1[t] = t == 0 ? -1 : random.nextInt(t);
+            parent2[t] = t > 1 && random.nextDouble() < 0.03 ? random.nextInt(t) : -1;
+            if (parent2[t] == parent1[t]) {
+                parent2[t] = -1;
+            }
+            second[t] = random.nextDouble() < 0.3;
+            shared[t] = t > 0 && random.nextDouble() < 0.1 ? random.nextInt(t) : -1;
+        }
+
+        // id[t] is the id of the t-th synset created; order[id] inverts it.
+        int[] id = new int[V];
+        for (int t = 0; t < V; t++) {
+            id[t] = t;
+        }
+        for (int t = V - 1; t > 0; t--) {
+            int k = random.nextInt(t + 1);
+            int tmp = id[t];
+            id[t] = id[k];
+            id[k] = tmp;
+        }
+        int[] order = new int[V];
+        for (int t = 0; t < V; t++) {
+            order[id[t]] = t;
+        }
+
+        try (BufferedWriter out = Files.newBufferedWriter(synsets)) {
+            for (int i = 0; i < V; i++) {
+                int t = order[i];
+                out.write(i + "," + noun(t));
+                if (second[t]) {
+                    out.write(" " + noun(t) + "_alt");
+                }
+                if (shared[t] != -1) {
+                    out.write(" " + noun(shared[t]));
+                }
+                out.write(",synthetic synset\n");
+            }
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(hypernyms)) {
+            for (int i = 0; i < V; i++) {
+                int t = order[i];
+                if (parent1[t] == -1) {
+                    continue;
+                }
+                out.write(i + "," + id[parent1[t]]);
+                if (parent2[t] != -1) {
+                    out.write("," + id[parent2[t]]);
+                }
+                out.write('\n');
+            }
+        }
+    }
+
+    // the noun every synset created t-th holds
+    private static String noun(int t) {
+        return "n" + Integer.toString(t, 36);
+    }
+}
@@ -1,36 +1,81 @@
 import edu.princeton.cs.algs4.*;
 import edu.princeton.cs.algs4.In;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class WordNet {
-    private HashMap<String, List<Integer>> word2id = new HashMap<>(); // map from noun to its ids.
-    private HashMap<Integer, List<String>> id2word = new HashMap<>(); // map from id to nouns.
-    private SAP sap;
+    // construction phases, in the order they complete; see ready and readyMillis.
+    public enum Phase {
+        NOUNS,  // the noun dictionary: isNoun and nouns answer.
+        GRAPH,  // the hypernym graph is validated: every query answers.
+        INDEXES // the indexes asked for at construction are built.
+    }
+
+    private final NounDictionary dictionary; // nouns and their synset ids as loaded.
+    // the search engine; completes exceptionally if the hypernym graph is invalid.
+    private final CompletableFuture<SAP> engine;
+    private final CompletableFuture<Void> indexes;
+    private final long startNanos;
+    private final AtomicLongArray readyNanos = new AtomicLongArray(Phase.values().length); // 0 until ready
+    // synsets added after loading: synset id -> nouns, and noun -> the added synset ids that hold it.
+    private final ConcurrentHashMap<Integer, String> addedSynsets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, int[]> addedNouns = new ConcurrentHashMap<>();
+    private int roots; // synsets with no hypernym; set before engine completes, then guarded by this.
+    private volatile QueryMetrics metrics; // null if queries are not instrumented.
 
     // constructor takes the name of the two input files
     public WordNet(String synsets, String hypernyms) {
-        if (synsets == null || hypernyms == null) {
+        this(synsets, hypernyms, 0);
+    }
+
+    // as above, caching up to cacheSize distance/sap results; 0 disables the cache.
+    public WordNet(String synsets, String hypernyms, int cacheSize) {
+        this(synsets, hypernyms, cacheSize, SAP.VertexOrder.INPUT);
+    }
+
+    // as above, with the hypernym graph stored in the given order; synset ids stay those of synsets.txt.
+    public WordNet(String synsets, String hypernyms, int cacheSize, SAP.VertexOrder order) {
+        if (synsets == null || hypernyms == null || cacheSize < 0 || order == null) {
             throw new java.lang.IllegalArgumentException();
         }
+        startNanos = System.nanoTime();
 
         In in = new In(synsets);
         String str;
 
         int V = 0;
+        int[] ids = new int[1024];
+        int[] nounStarts = new int[1025];
+        List<String> nouns = new ArrayList<>();
         while ((str = in.readLine()) != null) {
-            V++;
-            String[] tok = str.split(",");
-            String[] synset = tok[1].split(" ");
-            int id = Integer.parseInt(tok[0]);
-            for (String s : synset) {
-                word2id.computeIfAbsent(s, ignored -> new ArrayList<>()).add(id);
-                id2word.computeIfAbsent(id, ignored -> new ArrayList<>()).add(s);
+            if (V == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * V);
+                nounStarts = Arrays.copyOf(nounStarts, 2 * V + 1);
             }
+            String[] tok = str.split(",");
+            ids[V] = Integer.parseInt(tok[0]);
+            nouns.addAll(Arrays.asList(tok[1].split(" ")));
+            nounStarts[++V] = nouns.size();
         }
         in.close();
+        this.dictionary = NounDictionary.build(new WordNetParser.Synsets(Arrays.copyOf(ids, V),
+                Arrays.copyOf(nounStarts, V + 1), nouns.toArray(new String[0])));
 
         in = new In(hypernyms);
         Digraph graph = new Digraph(V);
@@ -56,12 +101,310 @@ public class WordNet {
             throw new IllegalArgumentException();
         }
 
-        this.sap = new SAP(graph);
+        ready(Phase.NOUNS, startNanos);
+        this.roots = root;
+        this.engine = CompletableFuture.completedFuture(
+                new SAP(graph, cacheSize == 0 ? null : new SAPCache(cacheSize), order));
+        ready(Phase.GRAPH, startNanos);
+        this.indexes = CompletableFuture.completedFuture(null);
+        ready(Phase.INDEXES, startNanos);
+    }
+
+    /**
+     * The WordNet of dictionary whose graph is, or will be, the value of graph: checked to be a rooted DAG unless
+     * trusted, which the caller passes only for a graph it has already validated. Queries that need the graph wait
+     * for it; then the label index is built if maxLabels is positive, and the depth index if depths.
+     */
+    private WordNet(NounDictionary dictionary, CompletableFuture<CSRDigraph> graph, int cacheSize,
+                    SAP.VertexOrder order, long maxLabels, boolean depths, boolean trusted, long startNanos) {
+        this.dictionary = dictionary;
+        this.startNanos = startNanos;
+        ready(Phase.NOUNS, startNanos);
+        this.engine = graph.thenApply(g -> {
+            int sinks = g.sinks();
+            if (!trusted && (sinks > 1 || g.hasCycle())) {
+                throw new IllegalArgumentException("hypernyms do not form a rooted DAG");
+            }
+            roots = sinks;
+            SAP sap = new SAP(g, cacheSize == 0 ? null : new SAPCache(cacheSize), order);
+            ready(Phase.GRAPH, startNanos);
+            return sap;
+        });
+        this.indexes = engine.thenAccept(sap -> {
+            if (maxLabels > 0) {
+                sap.buildLabelIndex(maxLabels);
+            }
+            if (depths) {
+                sap.buildDepthIndex();
+            }
+            ready(Phase.INDEXES, startNanos);
+        });
+    }
+
+    /**
+     * Same result as the constructor, with both files parsed in parallel from memory-mapped bytes. Meant for large
+     * taxonomies, where parsing dominates construction.
+     */
+    public static WordNet load(Path synsets, Path hypernyms) throws IOException {
+        return load(synsets, hypernyms, 0);
+    }
+
+    public static WordNet load(Path synsets, Path hypernyms, int cacheSize) throws IOException {
+        return load(synsets, hypernyms, cacheSize, SAP.VertexOrder.INPUT);
+    }
+
+    public static WordNet load(Path synsets, Path hypernyms, int cacheSize, SAP.VertexOrder order)
+            throws IOException {
+        if (synsets == null || hypernyms == null || cacheSize < 0 || order == null) {
+            throw new IllegalArgumentException();
+        }
+        long start = System.nanoTime();
+        WordNetParser.Synsets parsed = WordNetParser.parseSynsets(synsets);
+        CSRDigraph graph = WordNetParser.parseHypernyms(hypernyms, parsed.lines());
+        if (graph.hasCycle() || graph.sinks() > 1) {
+            throw new IllegalArgumentException();
+        }
+        return new WordNet(NounDictionary.build(parsed), CompletableFuture.completedFuture(graph), cacheSize, order,
+                0, false, true, start);
+    }
+
+    /**
+     * Returns as soon as the nouns are loaded, so isNoun and nouns answer within the synsets parse. Parsing and
+     * validating the hypernyms, then building a label index of at most maxLabels entries (none if 0) and the
+     * depth index, continue on the common fork/join pool; other queries wait for the graph. An invalid graph
+     * fails those queries with IllegalArgumentException. See ready and readyMillis for progress.
+     */
+    public static WordNet loadAsync(Path synsets, Path hypernyms, int cacheSize, long maxLabels) throws IOException {
+        if (synsets == null || hypernyms == null || cacheSize < 0 || maxLabels < 0) {
+            throw new IllegalArgumentException();
+        }
+        long start = System.nanoTime();
+        WordNetParser.Synsets parsed = WordNetParser.parseSynsets(synsets);
+        CompletableFuture<CSRDigraph> graph = CompletableFuture.supplyAsync(() -> {
+            try {
+                return WordNetParser.parseHypernyms(hypernyms, parsed.lines());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return new WordNet(NounDictionary.build(parsed), graph, cacheSize, SAP.VertexOrder.INPUT, maxLabels, true,
+                false, start);
+    }
+
+    /**
+     * Loads a WordNet written by save(). The file is memory-mapped and trusted: the cycle and root checks of the
+     * constructor are skipped.
+     */
+    public static WordNet open(Path path) throws IOException {
+        return open(path, 0);
+    }
+
+    public static WordNet open(Path path, int cacheSize) throws IOException {
+        return open(path, cacheSize, SAP.VertexOrder.INPUT);
+    }
+
+    public static WordNet open(Path path, int cacheSize, SAP.VertexOrder order) throws IOException {
+        if (path == null || cacheSize < 0 || order == null) {
+            throw new IllegalArgumentException();
+        }
+        long start = System.nanoTime();
+        WordNetSnapshot snapshot = WordNetSnapshot.read(path);
+        return new WordNet(snapshot.dictionary, CompletableFuture.completedFuture(snapshot.graph), cacheSize, order,
+                0, false, true, start);
+    }
+
+    // completes when phase is done, exceptionally if the graph turned out invalid; chain callbacks on it.
+    public CompletableFuture<Void> ready(Phase phase) {
+        if (phase == null) {
+            throw new IllegalArgumentException();
+        }
+        switch (phase) {
+            case NOUNS:
+                return CompletableFuture.completedFuture(null);
+            case GRAPH:
+                return engine.thenAccept(sap -> { });
+            default:
+                return indexes;
+        }
+    }
+
+    // milliseconds from the start of construction until phase was done; -1 while it is not.
+    public double readyMillis(Phase phase) {
+        if (phase == null) {
+            throw new IllegalArgumentException();
+        }
+        long nanos = readyNanos.get(phase.ordinal());
+        return nanos == 0 ? -1 : nanos / 1e6;
+    }
+
+    private void ready(Phase phase, long startNanos) {
+        readyNanos.set(phase.ordinal(), Math.max(1, System.nanoTime() - startNanos));
+    }
+
+    // the search engine, waiting for the graph if it is still being loaded
+    private SAP engine() {
+        try {
+            return engine.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // writes this WordNet, including added synsets and hypernyms, as a binary snapshot for open()
+    public synchronized void save(Path path) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException();
+        }
+        CSRDigraph graph = engine().graph();
+        NounDictionary merged = dictionary;
+        if (!addedSynsets.isEmpty()) {
+            // fold the added synsets into a new dictionary, one synsets.txt line per synset id.
+            int V = graph.V();
+            int[] ids = new int[V];
+            int[] nounStarts = new int[V + 1];
+            List<String> nouns = new ArrayList<>();
+            for (int id = 0; id < V; id++) {
+                ids[id] = id;
+                nouns.addAll(Arrays.asList(synset(id).split(" ")));
+                nounStarts[id + 1] = nouns.size();
+            }
+            merged = NounDictionary.build(new WordNetParser.Synsets(ids, nounStarts, nouns.toArray(new String[0])));
+        }
+        new WordNetSnapshot(merged, graph).write(path);
+    }
+
+    /**
+     * Adds a synset, a space-separated list of nouns like the second field of synsets.txt, with edges to the given
+     * hypernym synsets. A new synset has no hyponyms yet, so it cannot close a cycle; it may only lack hypernyms
+     * when the WordNet has no root.
+     *
+     * @return the id of the new synset.
+     */
+    public synchronized int addSynset(String synset, int... hypernyms) {
+        if (synset == null || hypernyms == null) {
+            throw new IllegalArgumentException();
+        }
+        String[] nouns = synset.split(" ");
+        for (String noun : nouns) {
+            if (noun.isEmpty()) {
+                throw new IllegalArgumentException();
+            }
+        }
+        int V = engine().V();
+        for (int h : hypernyms) {
+            if (h < 0 || h >= V) {
+                throw new IllegalArgumentException();
+            }
+        }
+        if (hypernyms.length == 0 && roots > 0) {
+            throw new IllegalArgumentException("a WordNet has a single root");
+        }
+
+        // publish the text first and the edges last: a query that reaches the new id through a hypernym edge, as
+        // nearest does, finds its synset, and one that finds its nouns finds the vertex in the graph.
+        int id = V;
+        addedSynsets.put(id, synset);
+        engine().addVertex();
+        for (String noun : nouns) {
+            addedNouns.merge(noun, new int[]{id}, (a, b) -> {
+                int[] ids = Arrays.copyOf(a, a.length + 1);
+                ids[a.length] = id;
+                return ids;
+            });
+        }
+        for (int h : hypernyms) {
+            engine().addEdge(id, h);
+        }
+        if (hypernyms.length == 0) {
+            roots++;
+        }
+        return id;
+    }
+
+    /**
+     * Adds hypernym as a hypernym of synset. The edge closes a cycle exactly when synset is already reachable from
+     * hypernym, so that one reachability check replaces a full cycle detection. Only cached results and index
+     * labels of synset and its hyponyms are invalidated.
+     */
+    public synchronized void addHypernym(int synset, int hypernym) {
+        int V = engine().V();
+        if (synset < 0 || synset >= V || hypernym < 0 || hypernym >= V) {
+            throw new IllegalArgumentException();
+        }
+        if (synset == hypernym || engine().hasPath(hypernym, synset)) {
+            throw new IllegalArgumentException("hypernym " + hypernym + " of " + synset + " makes a cycle");
+        }
+        if (engine().outdegree(synset) == 0) {
+            roots--;
+        }
+        engine().addEdge(synset, hypernym);
+    }
+
+    // number of synsets with no hypernym; 1 for a rooted WordNet. Waits for the graph if it is still being loaded.
+    public int rootCount() {
+        engine();
+        synchronized (this) {
+            return roots;
+        }
+    }
+
+    /**
+     * Builds the ancestor label index so distance and sap merge precomputed labels instead of searching.
+     *
+     * @return the index with its size and build time, or null if it would exceed maxLabels entries.
+     */
+    public AncestorLabelIndex buildLabelIndex(long maxLabels) {
+        return engine().buildLabelIndex(maxLabels);
+    }
+
+    /**
+     * Builds the depth index so distance and sap skip synsets that cannot lead to a shorter path.
+     *
+     * @return the index; never null for a WordNet, which is a DAG.
+     */
+    public DepthIndex buildDepthIndex() {
+        return engine().buildDepthIndex();
+    }
+
+    /**
+     * Builds the landmark index behind distanceEstimate, with the root and the synsets with the most hyponyms as
+     * count landmarks. Adding a hypernym drops it.
+     */
+    public LandmarkIndex buildLandmarkIndex(int count) {
+        return engine().buildLandmarkIndex(count);
+    }
+
+    /**
+     * Times distance, sap and outcast queries, and the length and ancestor searches of the SAP behind them, into
+     * metrics; null turns instrumentation off. Register metrics with JMX to watch them live.
+     */
+    public void setMetrics(QueryMetrics metrics) {
+        this.metrics = metrics;
+        // an async WordNet hands them on once its graph is ready.
+        engine.thenAccept(sap -> sap.setMetrics(this.metrics));
+    }
+
+    public QueryMetrics metrics() {
+        return metrics;
+    }
+
+    // the distance/sap result cache; null if there is none.
+    public SAPCache cache() {
+        return engine().cache();
     }
 
     // returns all WordNet nouns
     public Iterable<String> nouns() {
-        return word2id.keySet();
+        if (addedNouns.isEmpty()) {
+            return dictionary.nouns();
+        }
+        return () -> {
+            Stream<String> added = addedNouns.keySet().stream().filter(noun -> dictionary.indexOf(noun) == -1);
+            return Stream.concat(StreamSupport.stream(dictionary.nouns().spliterator(), false), added).iterator();
+        };
     }
 
     // is the word a WordNet noun?
@@ -69,25 +412,173 @@ public class WordNet {
         if (word == null) {
             throw new IllegalArgumentException();
         }
-        return word2id.containsKey(word);
+        return dictionary.indexOf(word) != -1 || addedNouns.containsKey(word);
     }
 
     // distance between nounA and nounB (defined below)
     public int distance(String nounA, String nounB) {
-        if (!isNoun(nounA) || !isNoun(nounB)) {
-            throw new IllegalArgumentException();
+        QueryMetrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        int res = engine().length(ids(nounA), ids(nounB));
+        if (m != null) {
+            m.record(QueryMetrics.Operation.DISTANCE, System.nanoTime() - start);
         }
-        return sap.length(word2id.get(nounA), word2id.get(nounB));
+        return res;
+    }
+
+    /**
+     * distance(nounA, nounB) from the landmark index when its bounds are within maxError of each other, and from an
+     * exact search otherwise; see buildLandmarkIndex.
+     */
+    public DistanceEstimate distanceEstimate(String nounA, String nounB, int maxError) {
+        return engine().lengthEstimate(synsets(nounA), synsets(nounB), maxError);
     }
 
     // a synset (second field of synsets.txt) that is the common ancestor of nounA and nounB
     // in a shortest ancestral path (defined below)
     public String sap(String nounA, String nounB) {
-        if (!isNoun(nounA) || !isNoun(nounB)) {
+        QueryMetrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        int ancestorId = engine().ancestor(ids(nounA), ids(nounB));
+        String res = synset(ancestorId);
+        if (m != null) {
+            m.record(QueryMetrics.Operation.SAP, System.nanoTime() - start);
+        }
+        return res;
+    }
+
+    // distance(nounsA.get(i), nounsB.get(i)) for every i, answered as one SAP batch
+    public int[] distances(List<String> nounsA, List<String> nounsB) {
+        return engine().lengths(synsets(nounsA), synsets(nounsB));
+    }
+
+    // sap(nounsA.get(i), nounsB.get(i)) for every i, answered as one SAP batch
+    public List<String> saps(List<String> nounsA, List<String> nounsB) {
+        int[] ancestors = engine().ancestors(synsets(nounsA), synsets(nounsB));
+        List<String> res = new ArrayList<>(ancestors.length);
+        for (int id : ancestors) {
+            res.add(synset(id));
+        }
+        return res;
+    }
+
+    /**
+     * The k nouns closest to noun by distance, nearest first and ties in alphabetical order; noun itself is left
+     * out. Synsets are reached in order of distance, so the search stops as soon as the next distance exceeds the
+     * k-th best, instead of measuring the distance to every noun.
+     */
+    public List<String> nearest(String noun, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException();
+        }
+        List<Integer> ids = synsets(noun);
+        // the k best so far, worst on top
+        Comparator<Map.Entry<String, Integer>> order = Map.Entry.<String, Integer>comparingByValue()
+                .thenComparing(Map.Entry.comparingByKey());
+        // no more than every noun can be kept, however large k is
+        int capacity = (int) Math.min(k, (long) dictionary.size() + addedNouns.size()) + 1;
+        PriorityQueue<Map.Entry<String, Integer>> best = new PriorityQueue<>(capacity, order.reversed());
+        HashSet<String> seen = new HashSet<>();
+        seen.add(noun);
+        if (k > 0) {
+            engine().nearest(ids, (id, distance) -> {
+                if (best.size() == k && distance > best.peek().getValue()) {
+                    return false;
+                }
+                for (String other : synset(id).split(" ")) {
+                    // the first visit of a noun is at its smallest distance
+                    if (seen.add(other)) {
+                        best.add(new AbstractMap.SimpleImmutableEntry<>(other, distance));
+                        if (best.size() > k) {
+                            best.poll();
+                        }
+                    }
+                }
+                return true;
+            });
+        }
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(best);
+        sorted.sort(order);
+        List<String> nouns = new ArrayList<>(sorted.size());
+        for (Map.Entry<String, Integer> e : sorted) {
+            nouns.add(e.getKey());
+        }
+        return nouns;
+    }
+
+    // a shortest ancestral path between synsets of nounA and nounB, as synset ids; see synset(int)
+    public AncestralPath path(String nounA, String nounB) {
+        return engine().path(synsets(nounA), synsets(nounB));
+    }
+
+    // ancestor synsets of noun with their depths, see AncestorDepths.distance
+    AncestorDepths ancestorDepths(String noun) {
+        return engine().ancestorDepths(synsets(noun));
+    }
+
+    // synset ids of each noun
+    private List<List<Integer>> synsets(List<String> nouns) {
+        if (nouns == null) {
+            throw new IllegalArgumentException();
+        }
+        List<List<Integer>> ids = new ArrayList<>(nouns.size());
+        for (String noun : nouns) {
+            ids.add(synsets(noun));
+        }
+        return ids;
+    }
+
+    // synset ids of noun
+    private List<Integer> synsets(String noun) {
+        if (noun == null) {
+            throw new IllegalArgumentException();
+        }
+        int i = dictionary.indexOf(noun);
+        int[] added = addedNouns.isEmpty() ? null : addedNouns.get(noun);
+        if (added == null) {
+            if (i == -1) {
+                throw new IllegalArgumentException();
+            }
+            return dictionary.synsets(i);
+        }
+        List<Integer> ids = new ArrayList<>();
+        if (i != -1) {
+            ids.addAll(dictionary.synsets(i));
+        }
+        for (int id : added) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    // synset ids of noun, as synsets(noun) without boxing
+    private int[] ids(String noun) {
+        if (noun == null) {
+            throw new IllegalArgumentException();
+        }
+        int i = dictionary.indexOf(noun);
+        int[] added = addedNouns.isEmpty() ? null : addedNouns.get(noun);
+        if (added == null) {
+            if (i == -1) {
+                throw new IllegalArgumentException();
+            }
+            return dictionary.synsetIds(i);
+        }
+        if (i == -1) {
+            return added;
+        }
+        int[] own = dictionary.synsetIds(i);
+        int[] ids = Arrays.copyOf(own, own.length + added.length);
+        System.arraycopy(added, 0, ids, own.length, added.length);
+        return ids;
+    }
+
+    // nouns of synset id joined by spaces, the second field of synsets.txt
+    public String synset(int id) {
+        if (id < 0 || id >= engine().V()) {
             throw new IllegalArgumentException();
         }
-        int ancestorId = sap.ancestor(word2id.get(nounA), word2id.get(nounB));
-        return String.join(" ", id2word.get(ancestorId));
+        return id < dictionary.synsetCount() ? dictionary.synset(id) : addedSynsets.get(id);
     }
 
     // do unit testing of this class
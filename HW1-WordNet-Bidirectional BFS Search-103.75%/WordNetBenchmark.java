@@ -0,0 +1,260 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks WordNet construction, SAP.length on near, far and multi-vertex queries, WordNet.distance and
+ * Outcast.outcast, on the given WordNet files and on synthetic WordNets a number of times larger.
+ * <p>
+ * Each benchmark runs warm-up rounds and then measured rounds on the calling thread. A row reports the mean time
+ * per operation over the measured rounds with its spread between rounds, the bytes allocated per operation from
+ * the thread's allocation counter, and the collections and collection time during the measured rounds. Queries
+ * come from seeded generators, so the same seed replays the same work and rows compare across commits.
+ * <p>
+ * usage: java WordNetBenchmark synsets.txt hypernyms.txt [scales] [seed] [queries]
+ * <br>scales is a comma-separated list such as "1,10,100": 1 is the given files, k a synthetic WordNet with k times
+ * as many synsets, written to a temporary directory. The defaults are "1,10", 42 and 20000 queries per round.
+ */
+public class WordNetBenchmark {
+    private static final int WARMUP = 2;
+    private static final int ROUNDS = 5;
+    private static final int[] OUTCAST_SIZES = {5, 50, 500};
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static long sink; // results go here, so the JIT cannot drop the work that produced them
+
+    // one round of a benchmark; returns a checksum of its results.
+    private interface Round {
+        long run() throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path synsets = Paths.get(args[0]);
+        Path hypernyms = Paths.get(args[1]);
+        String[] scales = (args.length > 2 ? args[2] : "1,10").split(",");
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+        int queries = args.length > 4 ? Integer.parseInt(args[4]) : 20000;
+
+        int V = WordNetParser.parseSynsets(synsets).lines();
+        StdOut.printf("%-6s %-28s %14s %8s %14s %12s\n", "scale", "benchmark", "time/op", "spread", "alloc/op", "gc");
+        for (String s : scales) {
+            int scale = Integer.parseInt(s.trim());
+            if (scale == 1) {
+                run("1x", synsets, hypernyms, seed, queries);
+                continue;
+            }
+            Path dir = Files.createTempDirectory("wordnet-bench");
+            Path synthSynsets = dir.resolve("synsets.txt");
+            Path synthHypernyms = dir.resolve("hypernyms.txt");
+            try {
+                SyntheticWordNet.write(scale * V, seed, synthSynsets, synthHypernyms);
+                run(scale + "x", synthSynsets, synthHypernyms, seed, queries);
+            } finally {
+                Files.deleteIfExists(synthSynsets);
+                Files.deleteIfExists(synthHypernyms);
+                Files.deleteIfExists(dir);
+            }
+        }
+        StdOut.println("checksum " + sink);
+    }
+
+    private static void run(String scale, Path synsets, Path hypernyms, long seed, int queries) throws IOException {
+        measure(scale, "WordNet(String, String)", 1, 1, 3,
+                () -> new WordNet(synsets.toString(), hypernyms.toString()).rootCount());
+        measure(scale, "WordNet.load", 1, 1, 3, () -> WordNet.load(synsets, hypernyms).rootCount());
+
+        WordNet wordnet = WordNet.load(synsets, hypernyms);
+        CSRDigraph graph = WordNetParser.parseHypernyms(hypernyms, WordNetParser.parseSynsets(synsets).lines());
+        SAP sap = new SAP(graph, null);
+        Random random = new Random(seed);
+
+        int[][] near = nearPairs(graph, queries, random);
+        int[][] far = farPairs(sap, graph.V(), queries, random);
+        List<List<Integer>> setsV = new ArrayList<>(), setsW = new ArrayList<>();
+        for (int i = 0; i < queries; i++) {
+            setsV.add(randomSet(graph.V(), random));
+            setsW.add(randomSet(graph.V(), random));
+        }
+        measure(scale, "SAP.length near", queries, WARMUP, ROUNDS, () -> lengths(sap, near));
+        measure(scale, "SAP.length far", queries, WARMUP, ROUNDS, () -> lengths(sap, far));
+        measure(scale, "SAP.length multi", queries, WARMUP, ROUNDS, () -> {
+            long sum = 0;
+            for (int i = 0; i < queries; i++) {
+                sum += sap.length(setsV.get(i), setsW.get(i));
+            }
+            return sum;
+        });
+
+        List<String> nouns = new ArrayList<>();
+        for (String noun : wordnet.nouns()) {
+            nouns.add(noun);
+        }
+        String[] nounsA = new String[queries], nounsB = new String[queries];
+        for (int i = 0; i < queries; i++) {
+            nounsA[i] = nouns.get(random.nextInt(nouns.size()));
+            nounsB[i] = nouns.get(random.nextInt(nouns.size()));
+        }
+        measure(scale, "WordNet.distance", queries, WARMUP, ROUNDS, () -> {
+            long sum = 0;
+            for (int i = 0; i < queries; i++) {
+                sum += wordnet.distance(nounsA[i], nounsB[i]);
+            }
+            return sum;
+        });
+
+        Outcast outcast = new Outcast(wordnet);
+        for (int size : OUTCAST_SIZES) {
+            // about the same number of noun pairs per round for every size
+            String[][] lists = new String[Math.max(1, 2000 / size)][size];
+            for (String[] list : lists) {
+                for (int k = 0; k < size; k++) {
+                    list[k] = nouns.get(random.nextInt(nouns.size()));
+                }
+            }
+            measure(scale, "Outcast.outcast " + size, lists.length, WARMUP, ROUNDS, () -> {
+                long sum = 0;
+                for (String[] list : lists) {
+                    sum += outcast.outcast(list).length();
+                }
+                return sum;
+            });
+        }
+    }
+
+    private static long lengths(SAP sap, int[][] pairs) {
+        long sum = 0;
+        for (int[] pair : pairs) {
+            sum += sap.length(pair[0], pair[1]);
+        }
+        return sum;
+    }
+
+    /**
+     * Pairs at most 4 apart: v, and a synset reached from v by climbing 1 or 2 hypernym edges and descending 1 or 2
+     * hyponym edges.
+     */
+    private static int[][] nearPairs(CSRDigraph graph, int n, Random random) {
+        CSRDigraph reverse = graph.reverse();
+        int[][] pairs = new int[n][];
+        for (int i = 0; i < n; i++) {
+            int v = random.nextInt(graph.V());
+            int x = walk(graph, v, 1 + random.nextInt(2), random);
+            pairs[i] = new int[]{v, walk(reverse, x, 1 + random.nextInt(2), random)};
+        }
+        return pairs;
+    }
+
+    // follows up to steps random edges of g from v, stopping early at a vertex with none
+    private static int walk(CSRDigraph g, int v, int steps, Random random) {
+        for (int s = 0; s < steps && g.outdegree(v) > 0; s++) {
+            v = g.targets()[g.offsets()[v] + random.nextInt(g.outdegree(v))];
+        }
+        return v;
+    }
+
+    // random pairs at least the median length of a sample of random pairs apart
+    private static int[][] farPairs(SAP sap, int V, int n, Random random) {
+        int[] sample = new int[1001];
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = sap.length(random.nextInt(V), random.nextInt(V));
+        }
+        Arrays.sort(sample);
+        int median = sample[sample.length / 2];
+        int[][] pairs = new int[n][];
+        for (int i = 0; i < n; ) {
+            int v = random.nextInt(V), w = random.nextInt(V);
+            if (sap.length(v, w) >= median) {
+                pairs[i++] = new int[]{v, w};
+            }
+        }
+        return pairs;
+    }
+
+    // 2 to 16 random vertices
+    private static List<Integer> randomSet(int V, Random random) {
+        List<Integer> set = new ArrayList<>();
+        for (int k = 2 + random.nextInt(15); k > 0; k--) {
+            set.add(random.nextInt(V));
+        }
+        return set;
+    }
+
+    // runs warmup rounds, then rounds measured rounds of ops operations each, and prints one row.
+    private static void measure(String scale, String name, int ops, int warmup, int rounds, Round round)
+            throws IOException {
+        for (int r = 0; r < warmup; r++) {
+            sink += round.run();
+        }
+        double[] nanos = new double[rounds];
+        long bytes = 0;
+        long gcCount = -gcCount(), gcMillis = -gcMillis();
+        for (int r = 0; r < rounds; r++) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            sink += round.run();
+            nanos[r] = (double) (System.nanoTime() - start) / ops;
+            bytes += allocatedBytes() - allocated;
+        }
+        gcCount += gcCount();
+        gcMillis += gcMillis();
+
+        double mean = 0;
+        for (double x : nanos) {
+            mean += x / rounds;
+        }
+        double variance = 0;
+        for (double x : nanos) {
+            variance += (x - mean) * (x - mean) / rounds;
+        }
+        String alloc = allocatedBytes() < 0 ? "n/a" : String.format("%.0f B", (double) bytes / rounds / ops);
+        StdOut.printf("%-6s %-28s %14s %7.1f%% %14s %4d (%4d ms)\n", scale, name, time(mean),
+                100 * Math.sqrt(variance) / mean, alloc, gcCount, gcMillis);
+    }
+
+    private static String time(double nanos) {
+        if (nanos >= 1e9) {
+            return String.format("%.2f s", nanos / 1e9);
+        }
+        if (nanos >= 1e6) {
+            return String.format("%.2f ms", nanos / 1e6);
+        }
+        if (nanos >= 1e3) {
+            return String.format("%.2f us", nanos / 1e3);
+        }
+        return String.format("%.0f ns", nanos);
+    }
+
+    // bytes this thread has allocated, from the HotSpot extension of ThreadMXBean; -1 where it is missing.
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+}
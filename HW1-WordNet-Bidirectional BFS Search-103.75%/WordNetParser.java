@@ -0,0 +1,241 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel parser for synsets.txt and hypernyms.txt.
+ * <p>
+ * A file is memory-mapped and cut into line-aligned chunks, which are parsed in parallel straight from the bytes:
+ * ids are read digit by digit and only the nouns themselves become Strings. Chunk results are concatenated in
+ * file order, so the output is the same as reading the file line by line.
+ */
+class WordNetParser {
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    // parsed synsets.txt: line i has id ids[i] and nouns nouns[nounStarts[i] .. nounStarts[i + 1]).
+    static final class Synsets {
+        final int[] ids;
+        final int[] nounStarts;
+        final String[] nouns;
+
+        Synsets(int[] ids, int[] nounStarts, String[] nouns) {
+            this.ids = ids;
+            this.nounStarts = nounStarts;
+            this.nouns = nouns;
+        }
+
+        int lines() {
+            return ids.length;
+        }
+    }
+
+    static Synsets parseSynsets(Path path) throws IOException {
+        ByteBuffer buf = map(path);
+        int[] bounds = chunks(buf);
+        SynsetChunk[] parts = new SynsetChunk[bounds.length - 1];
+        IntStream.range(0, parts.length).parallel()
+                .forEach(c -> parts[c] = new SynsetChunk(buf, bounds[c], bounds[c + 1]));
+
+        int lines = 0, nouns = 0;
+        for (SynsetChunk part : parts) {
+            lines += part.lines;
+            nouns += part.nounCount;
+        }
+        int[] ids = new int[lines];
+        int[] nounStarts = new int[lines + 1];
+        String[] allNouns = new String[nouns];
+        int line = 0, noun = 0;
+        for (SynsetChunk part : parts) {
+            for (int i = 0; i < part.lines; i++) {
+                ids[line] = part.ids[i];
+                nounStarts[line + 1] = noun + part.nounStarts[i + 1];
+                line++;
+            }
+            System.arraycopy(part.nouns, 0, allNouns, noun, part.nounCount);
+            noun += part.nounCount;
+        }
+        return new Synsets(ids, nounStarts, allNouns);
+    }
+
+    // hypernym graph over V synsets; adjacency order is the same as adding the edges to a Digraph.
+    static CSRDigraph parseHypernyms(Path path, int V) throws IOException {
+        ByteBuffer buf = map(path);
+        int[] bounds = chunks(buf);
+        EdgeChunk[] parts = new EdgeChunk[bounds.length - 1];
+        IntStream.range(0, parts.length).parallel()
+                .forEach(c -> parts[c] = new EdgeChunk(buf, bounds[c], bounds[c + 1]));
+
+        int E = 0;
+        for (EdgeChunk part : parts) {
+            E += part.size;
+        }
+        int[] from = new int[E];
+        int[] to = new int[E];
+        int e = 0;
+        for (EdgeChunk part : parts) {
+            System.arraycopy(part.from, 0, from, e, part.size);
+            System.arraycopy(part.to, 0, to, e, part.size);
+            e += part.size;
+        }
+        return CSRDigraph.fromEdges(V, from, to);
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("file too large: " + path);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // chunk c is bytes [bounds[c], bounds[c + 1]); every chunk but the last ends right after a '\n'.
+    private static int[] chunks(ByteBuffer buf) {
+        int size = buf.limit();
+        int[] bounds = new int[size / CHUNK_BYTES + 2];
+        int n = 0;
+        bounds[n++] = 0;
+        int pos = CHUNK_BYTES;
+        while (pos < size) {
+            while (pos < size && buf.get(pos - 1) != '\n') {
+                pos++;
+            }
+            if (pos < size) {
+                bounds[n++] = pos;
+            }
+            pos += CHUNK_BYTES;
+        }
+        bounds[n++] = size;
+        return Arrays.copyOf(bounds, n);
+    }
+
+    // end of the line starting at pos, without its '\r\n' or '\n'
+    private static int lineEnd(ByteBuffer buf, int pos, int end) {
+        while (pos < end && buf.get(pos) != '\n') {
+            pos++;
+        }
+        if (pos > 0 && pos <= end && buf.get(pos - 1) == '\r') {
+            pos--;
+        }
+        return pos;
+    }
+
+    private static int nextLine(ByteBuffer buf, int pos, int end) {
+        while (pos < end && buf.get(pos) != '\n') {
+            pos++;
+        }
+        return pos + 1;
+    }
+
+    private static NumberFormatException badLine(ByteBuffer buf, int from, int to) {
+        byte[] line = new byte[to - from];
+        buf.get(from, line);
+        return new NumberFormatException("malformed line: " + new String(line, StandardCharsets.UTF_8));
+    }
+
+    // "id,noun noun ...,gloss" lines
+    private static final class SynsetChunk {
+        int lines, nounCount;
+        int[] ids = new int[64];
+        int[] nounStarts = new int[65];
+        String[] nouns = new String[64];
+
+        SynsetChunk(ByteBuffer buf, int from, int to) {
+            byte[] scratch = new byte[64];
+            for (int pos = from; pos < to; pos = nextLine(buf, pos, to)) {
+                int end = lineEnd(buf, pos, to);
+                if (end == pos) {
+                    continue;
+                }
+                if (lines == ids.length) {
+                    ids = Arrays.copyOf(ids, 2 * lines);
+                    nounStarts = Arrays.copyOf(nounStarts, 2 * lines + 1);
+                }
+
+                int i = pos, id = 0;
+                while (i < end && buf.get(i) != ',') {
+                    int digit = buf.get(i++) - '0';
+                    if (digit < 0 || digit > 9) {
+                        throw badLine(buf, pos, end);
+                    }
+                    id = 10 * id + digit;
+                }
+                if (i == pos || i == end) {
+                    throw badLine(buf, pos, end);
+                }
+                ids[lines] = id;
+
+                // nouns are separated by single spaces and end at the next ','.
+                int fieldEnd = ++i;
+                while (fieldEnd < end && buf.get(fieldEnd) != ',') {
+                    fieldEnd++;
+                }
+                int firstNoun = nounCount;
+                while (i <= fieldEnd) {
+                    int j = i;
+                    while (j < fieldEnd && buf.get(j) != ' ') {
+                        j++;
+                    }
+                    if (j - i > scratch.length) {
+                        scratch = new byte[2 * (j - i)];
+                    }
+                    buf.get(i, scratch, 0, j - i);
+                    if (nounCount == nouns.length) {
+                        nouns = Arrays.copyOf(nouns, 2 * nounCount);
+                    }
+                    nouns[nounCount++] = new String(scratch, 0, j - i, StandardCharsets.UTF_8);
+                    i = j + 1;
+                }
+                // like String.split, trailing empty nouns are dropped.
+                while (nounCount > firstNoun && nouns[nounCount - 1].isEmpty()) {
+                    nounCount--;
+                }
+                nounStarts[++lines] = nounCount;
+            }
+        }
+    }
+
+    // "v,w,w,..." lines
+    private static final class EdgeChunk {
+        int size;
+        int[] from = new int[64], to = new int[64];
+
+        EdgeChunk(ByteBuffer buf, int start, int end) {
+            for (int pos = start; pos < end; pos = nextLine(buf, pos, end)) {
+                int lineEnd = lineEnd(buf, pos, end);
+                if (lineEnd == pos) {
+                    continue;
+                }
+                int v = -1;
+                for (int i = pos; i < lineEnd; i++) {
+                    int value = 0, digits = 0;
+                    for (; i < lineEnd && buf.get(i) != ','; i++, digits++) {
+                        int digit = buf.get(i) - '0';
+                        if (digit < 0 || digit > 9) {
+                            throw badLine(buf, pos, lineEnd);
+                        }
+                        value = 10 * value + digit;
+                    }
+                    if (digits == 0) {
+                        throw badLine(buf, pos, lineEnd);
+                    }
+                    if (v == -1) {
+                        v = value;
+                        continue;
+                    }
+                    if (size == from.length) {
+                        from = Arrays.copyOf(from, 2 * size);
+                        to = Arrays.copyOf(to, 2 * size);
+                    }
+                    from[size] = v;
+                    to[size++] = value;
+                }
+            }
+        }
+    }
+}
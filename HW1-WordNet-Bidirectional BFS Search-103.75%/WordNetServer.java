@@ -0,0 +1,392 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Answers WordNet queries from one long-running WordNet, over a local TCP port or a Unix domain socket.
+ * <p>
+ * The protocol is one request per line, words separated by spaces, and one reply line per request:
+ * <pre>
+ *   distance A B       the distance, e.g. "5"
+ *   sap A B            the ancestor synset, e.g. "physical_entity"
+ *   isNoun A           "true" or "false"
+ *   outcast A B ...    the outcast noun
+ *   stats              counters as key=value pairs
+ * </pre>
+ * A malformed request or an unknown noun gets "ERR message" and the connection stays open.
+ * <p>
+ * Each connection is served by its own thread, a virtual thread where the runtime has them. Distance and sap
+ * requests are validated on that thread, then queued: one batcher thread drains the queue into micro-batches of up
+ * to MAX_BATCH requests and hands each batch off, its distances and its saps as two concurrent calls to
+ * WordNet.distances and WordNet.saps, so concurrent clients share the SAP batch machinery instead of each running a
+ * search alone. Up to one batch per processor is in flight; while all are busy the queue fills the next batch.
+ */
+public class WordNetServer implements AutoCloseable {
+    private static final int MAX_BATCH = 256;
+    private static final int MAX_IN_FLIGHT = Runtime.getRuntime().availableProcessors(); // batches being answered
+
+    private final WordNet wordnet;
+    private final Outcast outcast;
+    private final ServerSocketChannel server;
+    private final Path socketPath; // the Unix socket file, deleted on close; null for TCP
+    private final ExecutorService connections = connectionExecutor();
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+    private final Thread acceptor;
+    private final Thread batcher;
+    private final long startNanos = System.nanoTime();
+    private volatile boolean closed;
+
+    // counters; see stats
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batched = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    // a queued distance or sap request
+    private static final class Request {
+        final boolean distance; // distance if true, sap if false
+        final String nounA;
+        final String nounB;
+        final CompletableFuture<String> reply = new CompletableFuture<>();
+
+        Request(boolean distance, String nounA, String nounB) {
+            this.distance = distance;
+            this.nounA = nounA;
+            this.nounB = nounB;
+        }
+    }
+
+    // serves wordnet on port of the loopback interface; port 0 picks a free one, see address.
+    public WordNetServer(WordNet wordnet, int port) throws IOException {
+        this(wordnet, ServerSocketChannel.open(StandardProtocolFamily.INET),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), null);
+    }
+
+    // serves wordnet on a Unix domain socket created at path, which must not exist.
+    public WordNetServer(WordNet wordnet, Path path) throws IOException {
+        this(wordnet, ServerSocketChannel.open(StandardProtocolFamily.UNIX), UnixDomainSocketAddress.of(path), path);
+    }
+
+    private WordNetServer(WordNet wordnet, ServerSocketChannel server, SocketAddress address, Path socketPath)
+            throws IOException {
+        if (wordnet == null) {
+            server.close();
+            throw new IllegalArgumentException();
+        }
+        this.wordnet = wordnet;
+        this.outcast = new Outcast(wordnet);
+        this.server = server;
+        this.socketPath = socketPath;
+        try {
+            server.bind(address);
+        } catch (IOException e) {
+            server.close();
+            connections.shutdown();
+            throw e;
+        }
+        batcher = new Thread(this::batch, "WordNetServer-batcher");
+        batcher.setDaemon(true);
+        batcher.start();
+        // the one non-daemon thread, which keeps a server's JVM alive until close.
+        acceptor = new Thread(this::accept, "WordNetServer-acceptor");
+        acceptor.start();
+    }
+
+    // virtual threads on Java 21 and later, a cached pool of daemon threads before
+    private static ExecutorService connectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "WordNetServer-connection");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // the address clients connect to
+    public SocketAddress address() throws IOException {
+        return server.getLocalAddress();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                SocketChannel channel = server.accept();
+                connections.execute(() -> serve(channel));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                StdOut.println("accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // answers the requests of one connection in order until the client closes it
+    private void serve(SocketChannel channel) {
+        try (SocketChannel c = channel;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(Channels.newInputStream(c), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(
+                     new OutputStreamWriter(Channels.newOutputStream(c), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                String reply;
+                try {
+                    reply = answer(line.trim().split("\\s+"));
+                } catch (RuntimeException e) {
+                    // also a graph that failed to load, which any query touching it rethrows
+                    errors.increment();
+                    reply = "ERR " + message(e);
+                }
+                out.write(reply);
+                out.write('\n');
+                out.flush();
+                record(System.nanoTime() - start);
+            }
+        } catch (IOException e) {
+            // the client went away; nothing to answer.
+        }
+    }
+
+    // the message of e, or of the cause a future wrapped in it
+    private static String message(RuntimeException e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof IllegalArgumentException) {
+            return cause.getMessage() == null ? "invalid request" : cause.getMessage();
+        }
+        return String.valueOf(cause);
+    }
+
+    private String answer(String[] words) {
+        switch (words[0]) {
+            case "distance":
+            case "sap":
+                arguments(words, 3);
+                Request request = new Request(words[0].equals("distance"), noun(words[1]), noun(words[2]));
+                if (closed) {
+                    throw new IllegalArgumentException("server closed");
+                }
+                queue.add(request);
+                if (closed) {
+                    // close may have come after the batcher failed what was queued; completing twice is a no-op.
+                    request.reply.completeExceptionally(new IllegalArgumentException("server closed"));
+                }
+                try {
+                    return request.reply.join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof IllegalArgumentException) {
+                        throw (IllegalArgumentException) e.getCause();
+                    }
+                    throw new IllegalArgumentException(String.valueOf(e.getCause()));
+                }
+            case "isNoun":
+                arguments(words, 2);
+                return Boolean.toString(wordnet.isNoun(words[1]));
+            case "outcast":
+                if (words.length < 3) {
+                    throw new IllegalArgumentException("usage: outcast A B ...");
+                }
+                String[] nouns = Arrays.copyOfRange(words, 1, words.length);
+                for (String noun : nouns) {
+                    noun(noun);
+                }
+                return outcast.outcast(nouns);
+            case "stats":
+                arguments(words, 1);
+                return stats();
+            default:
+                throw new IllegalArgumentException("unknown command: " + words[0]);
+        }
+    }
+
+    private static void arguments(String[] words, int count) {
+        if (words.length != count) {
+            throw new IllegalArgumentException("usage: " + words[0] + (count == 1 ? "" : count == 2 ? " A" : " A B"));
+        }
+    }
+
+    // checked before batching, so one bad noun cannot fail the other requests of its batch
+    private String noun(String word) {
+        if (!wordnet.isNoun(word)) {
+            throw new IllegalArgumentException("not a WordNet noun: " + word);
+        }
+        return word;
+    }
+
+    // drains the queue into micro-batches until close
+    private void batch() {
+        while (!closed) {
+            List<Request> batch = new ArrayList<>(MAX_BATCH);
+            try {
+                batch.add(queue.take());
+                // requests keep queueing while every batch in flight is busy, so the next one comes out larger.
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                fail(batch, new IllegalArgumentException("server closed"));
+                break;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            List<Request> distances = new ArrayList<>();
+            List<Request> saps = new ArrayList<>();
+            for (Request r : batch) {
+                (r.distance ? distances : saps).add(r);
+            }
+            CompletableFuture.allOf(answer(distances, this::distances), answer(saps, this::saps))
+                    .whenComplete((ok, e) -> inFlight.release());
+            batches.increment();
+            batched.add(batch.size());
+        }
+        fail(queue, new IllegalArgumentException("server closed"));
+    }
+
+    // answers requests with query on another thread; completes when every reply is complete
+    private CompletableFuture<Void> answer(List<Request> requests, Consumer<List<Request>> query) {
+        if (requests.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            return CompletableFuture.runAsync(() -> query.accept(requests), connections).exceptionally(e -> {
+                // e.g. the graph of an async WordNet failed validation; completing twice is a no-op.
+                fail(requests, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            fail(requests, new IllegalArgumentException("server closed"));
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private void distances(List<Request> requests) {
+        int[] res = wordnet.distances(nounsA(requests), nounsB(requests));
+        for (int i = 0; i < res.length; i++) {
+            requests.get(i).reply.complete(Integer.toString(res[i]));
+        }
+    }
+
+    private void saps(List<Request> requests) {
+        List<String> res = wordnet.saps(nounsA(requests), nounsB(requests));
+        for (int i = 0; i < res.size(); i++) {
+            requests.get(i).reply.complete(res.get(i));
+        }
+    }
+
+    private static void fail(Iterable<Request> requests, Throwable e) {
+        for (Request r : requests) {
+            r.reply.completeExceptionally(e);
+        }
+    }
+
+    private static List<String> nounsA(List<Request> requests) {
+        List<String> nouns = new ArrayList<>(requests.size());
+        for (Request r : requests) {
+            nouns.add(r.nounA);
+        }
+        return nouns;
+    }
+
+    private static List<String> nounsB(List<Request> requests) {
+        List<String> nouns = new ArrayList<>(requests.size());
+        for (Request r : requests) {
+            nouns.add(r.nounB);
+        }
+        return nouns;
+    }
+
+    private void record(long nanos) {
+        requests.increment();
+        latencyNanos.add(nanos);
+        maxLatencyNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Counters since start, as one line of key=value pairs: requests answered, errors among them, micro-batches and
+     * their mean size, requests per second, mean and max latency from reading a request to writing its reply, and
+     * the milliseconds each WordNet phase took to become ready, -1 while it is not.
+     */
+    public String stats() {
+        long n = requests.sum();
+        long b = batches.sum();
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("requests=%d errors=%d batches=%d meanBatch=%.2f qps=%.1f meanLatencyMs=%.3f "
+                        + "maxLatencyMs=%.3f", n, errors.sum(), b, b == 0 ? 0.0 : (double) batched.sum() / b,
+                n / seconds, n == 0 ? 0.0 : latencyNanos.sum() / 1e6 / n, maxLatencyNanos.get() / 1e6));
+        for (WordNet.Phase phase : WordNet.Phase.values()) {
+            sb.append(String.format(" %sReadyMs=%.1f", phase.name().toLowerCase(), wordnet.readyMillis(phase)));
+        }
+        return sb.toString();
+    }
+
+    // stops accepting, drops open connections and fails queued requests
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            server.close();
+        } finally {
+            batcher.interrupt();
+            connections.shutdownNow();
+            if (socketPath != null) {
+                Files.deleteIfExists(socketPath);
+            }
+        }
+    }
+
+    // usage: java WordNetServer synsets.txt hypernyms.txt port|socketPath
+    // isNoun answers as soon as the synsets are parsed; graph queries wait for the hypernyms.
+    public static void main(String[] args) throws IOException {
+        WordNet wordnet = WordNet.loadAsync(Paths.get(args[0]), Paths.get(args[1]), 0, 0);
+        WordNetServer server = args[2].matches("\\d+")
+                ? new WordNetServer(wordnet, Integer.parseInt(args[2]))
+                : new WordNetServer(wordnet, Paths.get(args[2]));
+        StdOut.printf("listening on %s, nouns ready in %.1f ms\n", server.address(),
+                wordnet.readyMillis(WordNet.Phase.NOUNS));
+        wordnet.ready(WordNet.Phase.INDEXES).whenComplete((ok, e) -> StdOut.printf(e == null
+                ? "graph ready in %.1f ms, indexes in %.1f ms\n" : "hypernyms rejected\n",
+                wordnet.readyMillis(WordNet.Phase.GRAPH), wordnet.readyMillis(WordNet.Phase.INDEXES)));
+    }
+}
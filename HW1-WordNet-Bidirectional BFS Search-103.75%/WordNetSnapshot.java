@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Versioned binary image of a WordNet, read through a memory mapping.
+ * <p>
+ * Layout, little-endian: MAGIC, VERSION, then one section per array below, each an int length followed by the
+ * elements. The char section is padded to a multiple of 4 bytes so every int section stays aligned.
+ * <ul>
+ * <li>chars, nounOffsets: the sorted noun table; noun i is chars[nounOffsets[i] .. nounOffsets[i + 1]).</li>
+ * <li>nounSynsetOffsets, nounSynsets: noun i is in synsets nounSynsets[nounSynsetOffsets[i] .. [i + 1]).</li>
+ * <li>synsetNounOffsets, synsetNouns: nouns of each synset, in synsets.txt order.</li>
+ * <li>graphOffsets, graphTargets: the hypernym graph in CSR form.</li>
+ * </ul>
+ * Nothing is validated beyond the header: a snapshot is trusted to come from save().
+ */
+class WordNetSnapshot {
+    private static final int MAGIC = 0x574E4554; // "WNET"
+    private static final int VERSION = 1;
+
+    final NounDictionary dictionary;
+    final CSRDigraph graph;
+
+    WordNetSnapshot(NounDictionary dictionary, CSRDigraph graph) {
+        this.dictionary = dictionary;
+        this.graph = graph;
+    }
+
+    void write(Path path) throws IOException {
+        char[] chars = dictionary.chars();
+        int[][] ints = {dictionary.nounOffsets(), dictionary.nounSynsetOffsets(), dictionary.nounSynsets(),
+                dictionary.synsetNounOffsets(), dictionary.synsetNouns(), graph.offsets(), graph.targets()};
+        long size = 8 + 4 + 2L * paddedLength(chars.length);
+        for (int[] a : ints) {
+            size += 4 + 4L * a.length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("WordNet too large for a snapshot: " + size + " bytes");
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC).putInt(VERSION);
+
+            buf.putInt(chars.length);
+            buf.asCharBuffer().put(chars);
+            buf.position(buf.position() + 2 * paddedLength(chars.length));
+            for (int[] a : ints) {
+                buf.putInt(a.length);
+                buf.asIntBuffer().put(a);
+                buf.position(buf.position() + 4 * a.length);
+            }
+            buf.force();
+        }
+    }
+
+    static WordNetSnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("not a WordNet snapshot: " + path);
+            }
+            // the mapping stays valid after the channel is closed.
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            if (buf.remaining() < 8 || buf.getInt() != MAGIC) {
+                throw new IOException("not a WordNet snapshot: " + path);
+            }
+            int version = buf.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported WordNet snapshot version " + version + ": " + path);
+            }
+
+            char[] chars = new char[buf.getInt()];
+            buf.asCharBuffer().get(chars);
+            buf.position(buf.position() + 2 * paddedLength(chars.length));
+            int[] nounOffsets = readInts(buf);
+            int[] nounSynsetOffsets = readInts(buf);
+            int[] nounSynsets = readInts(buf);
+            int[] synsetNounOffsets = readInts(buf);
+            int[] synsetNouns = readInts(buf);
+            int[] graphOffsets = readInts(buf);
+            int[] graphTargets = readInts(buf);
+            NounDictionary dictionary = new NounDictionary(chars, nounOffsets, nounSynsetOffsets, nounSynsets,
+                    synsetNounOffsets, synsetNouns);
+            return new WordNetSnapshot(dictionary, new CSRDigraph(graphOffsets, graphTargets));
+        }
+    }
+
+    private static int[] readInts(ByteBuffer buf) {
+        int[] a = new int[buf.getInt()];
+        buf.asIntBuffer().get(a);
+        buf.position(buf.position() + 4 * a.length);
+        return a;
+    }
+
+    // chars rounded up to a whole number of ints
+    private static int paddedLength(int chars) {
+        return (chars + 1) & ~1;
+    }
+}
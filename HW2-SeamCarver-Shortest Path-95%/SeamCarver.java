@@ -1,16 +1,15 @@
 import edu.princeton.cs.algs4.Picture;
 
-import java.awt.Color;
-
 public class SeamCarver {
     private static final int BORDER_ENERGY = 1000;
     private static final boolean HORIZONTAL = false;
     private static final boolean VERTICAL = true;
 
-    // for full marks, need to use one single int to represent color to satisfy space requirement.
-    // may refer to https://github.com/Ramin8or/algorithms/blob/4f92b7032ce61137041fe5807bc553ac38468ef8/7_seam_carver/SeamCarver.java
-    // private int[][] pixels; // Alpha and RGB values packed in integers
-    private Color[][] colorsMatrix;
+    // one int per pixel, ARGB packed as by Picture.getRGB, 4 bytes a pixel instead of a Color object each.
+    // pixel (col, row) is pixels[row * stride + col]; stride stays the original width, so removing a seam
+    // shifts pixels within the buffer and never reallocates it.
+    private final int[] pixels;
+    private final int stride;
     private int height, width;
 
     // create a seam carver object based on the given picture
@@ -22,10 +21,11 @@ public class SeamCarver {
         height = picture.height();
         width = picture.width();
 
-        colorsMatrix = new Color[height][width];
+        stride = width;
+        pixels = new int[height * stride];
         for (int row = 0; row < height; row++) {
             for (int col = 0; col < width; col++) {
-                colorsMatrix[row][col] = picture.get(col, row);
+                pixels[row * stride + col] = picture.getRGB(col, row);
             }
         }
     }
@@ -33,9 +33,9 @@ public class SeamCarver {
     // current picture
     public Picture picture() {
         Picture picture = new Picture(width, height);
-        for (int col = 0; col < width; col++) {
-            for (int row = 0; row < height; row++) {
-                picture.set(col, row, colorsMatrix[row][col]);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                picture.setRGB(col, row, pixels[row * stride + col]);
             }
         }
         return picture;
@@ -61,13 +61,9 @@ public class SeamCarver {
             return BORDER_ENERGY;
         }
 
-        Color l = colorsMatrix[row][col - 1];
-        Color r = colorsMatrix[row][col + 1];
-        double deltaX2 = colorSquareDiff(l, r);
-
-        Color u = colorsMatrix[row - 1][col];
-        Color d = colorsMatrix[row + 1][col];
-        double deltaY2 = colorSquareDiff(u, d);
+        int i = row * stride + col;
+        int deltaX2 = colorSquareDiff(pixels[i - 1], pixels[i + 1]);
+        int deltaY2 = colorSquareDiff(pixels[i - stride], pixels[i + stride]);
 
         return Math.sqrt(deltaX2 + deltaY2);
     }
@@ -86,16 +82,13 @@ public class SeamCarver {
     //     return energy(row, col);
     // }
 
-    private double colorSquareDiff(Color c1, Color c2) {
-
-        double cDiffR = c1.getRed() - c2.getRed();
-        double cDiffG = c1.getGreen() - c2.getGreen();
-        double cDiffB = c1.getBlue() - c2.getBlue();
+    // squared distance between two packed colors; the sum of three squares of at most 255 fits an int.
+    private static int colorSquareDiff(int c1, int c2) {
+        int cDiffR = ((c1 >> 16) & 0xFF) - ((c2 >> 16) & 0xFF);
+        int cDiffG = ((c1 >> 8) & 0xFF) - ((c2 >> 8) & 0xFF);
+        int cDiffB = (c1 & 0xFF) - (c2 & 0xFF);
 
-        double res = Math.pow(cDiffR, 2);
-        res += Math.pow(cDiffG, 2);
-        res += Math.pow(cDiffB, 2);
-        return res;
+        return cDiffR * cDiffR + cDiffG * cDiffG + cDiffB * cDiffB;
     }
 
     // sequence of indices for horizontal seam
@@ -206,13 +199,11 @@ public class SeamCarver {
     public void removeVerticalSeam(int[] seam) {
         checkSeam(seam, VERTICAL);
 
-        Color[][] newColors = new Color[height][width - 1];
+        // shift the rest of each row left over the removed pixel
         for (int i = 0; i < height; i++) {
-            // System.arraycopy(colorsMatrix[i], seam[i] + 1, colorsMatrix[i], seam[i], width - seam[i] - 1);
-            System.arraycopy(colorsMatrix[i], 0, newColors[i], 0, seam[i]);
-            System.arraycopy(colorsMatrix[i], seam[i] + 1, newColors[i], seam[i], width - seam[i] - 1);
+            int at = i * stride + seam[i];
+            System.arraycopy(pixels, at + 1, pixels, at, width - seam[i] - 1);
         }
-        colorsMatrix = newColors;
         width--;
     }
 
@@ -220,17 +211,15 @@ public class SeamCarver {
     public void removeHorizontalSeam(int[] seam) {
         checkSeam(seam, HORIZONTAL);
 
-        Color[][] newColors = new Color[height - 1][width];
-        for (int col = 0; col < width; col++) {
-            for (int row = 0; row < height - 1; row++) {
-                if (row < seam[col]) {
-                    newColors[row][col] = colorsMatrix[row][col];
-                } else {
-                    newColors[row][col] = colorsMatrix[row + 1][col];
+        // shift the rest of each column up over the removed pixel, a row at a time so reads stay sequential
+        for (int row = 0; row < height - 1; row++) {
+            int at = row * stride;
+            for (int col = 0; col < width; col++) {
+                if (row >= seam[col]) {
+                    pixels[at + col] = pixels[at + stride + col];
                 }
             }
         }
-        colorsMatrix = newColors;
         height--;
     }
 